@@ -0,0 +1,57 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.classes;
+
+/**
+ * BulkItemResult class - result of a single item of a bulk mutation
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class BulkItemResult<Type> {
+    private int index;
+    private Type result;
+    private String error;
+
+    public BulkItemResult(int index, Type result, String error) {
+        this.index = index;
+        this.result = result;
+        this.error = error;
+    }
+
+    /**
+     * Position of the item in the input list.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public Type getResult() {
+        return result;
+    }
+
+    /**
+     * Error message, null if the item succeeded.
+     */
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.classes;
+
+/**
+ * CursorPagination class - cursor pagination input (Relay connection arguments) when querying with cursor pagination
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class CursorPagination {
+    private Integer first;
+    private String after;
+    private Integer last;
+    private String before;
+
+    public CursorPagination() {
+    }
+
+    public CursorPagination(Integer first, String after) {
+        this.first = first;
+        this.after = after;
+    }
+
+    public Integer getFirst() {
+        return first;
+    }
+
+    public String getAfter() {
+        return after;
+    }
+
+    public Integer getLast() {
+        return last;
+    }
+
+    public String getBefore() {
+        return before;
+    }
+
+    public void setFirst(Integer first) {
+        this.first = first;
+    }
+
+    public void setAfter(String after) {
+        this.after = after;
+    }
+
+    public void setLast(Integer last) {
+        this.last = last;
+    }
+
+    public void setBefore(String before) {
+        this.before = before;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.classes;
+
+/**
+ * PageInfo class - Relay page info of a connection
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class PageInfo {
+    private boolean hasPreviousPage;
+    private boolean hasNextPage;
+    private String startCursor;
+    private String endCursor;
+
+    public PageInfo(boolean hasPreviousPage, boolean hasNextPage, String startCursor, String endCursor) {
+        this.hasPreviousPage = hasPreviousPage;
+        this.hasNextPage = hasNextPage;
+        this.startCursor = startCursor;
+        this.endCursor = endCursor;
+    }
+
+    public boolean isHasPreviousPage() {
+        return hasPreviousPage;
+    }
+
+    public boolean isHasNextPage() {
+        return hasNextPage;
+    }
+
+    public String getStartCursor() {
+        return startCursor;
+    }
+
+    public String getEndCursor() {
+        return endCursor;
+    }
+}
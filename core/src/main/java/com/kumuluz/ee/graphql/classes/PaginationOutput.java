@@ -29,13 +29,35 @@ package com.kumuluz.ee.graphql.classes;
  */
 public class PaginationOutput extends Pagination {
     private Integer total;
+    private Boolean totalCapped;
+    private Boolean totalEstimated;
 
     public PaginationOutput(Pagination p, Integer total) {
+        this(p, total, false, false);
+    }
+
+    public PaginationOutput(Pagination p, Integer total, Boolean totalCapped, Boolean totalEstimated) {
         super(p.getLimit(), p.getOffset());
         this.total = total;
+        this.totalCapped = totalCapped;
+        this.totalEstimated = totalEstimated;
     }
 
     public Integer getTotal() {
         return total;
     }
+
+    /**
+     * True, if there are more results than total (total was counted up to a cap).
+     */
+    public Boolean getTotalCapped() {
+        return totalCapped;
+    }
+
+    /**
+     * True, if total is an estimate.
+     */
+    public Boolean getTotalEstimated() {
+        return totalEstimated;
+    }
 }
@@ -0,0 +1,49 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.execution;
+
+/**
+ * ExecutionMode enum - built-in execution modes for query operations
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public enum ExecutionMode {
+    /**
+     * Fields are resolved on the request thread (graphql-java default).
+     */
+    DEFAULT,
+    /**
+     * Fields are resolved in parallel on virtual threads (JDK 21+).
+     */
+    VIRTUAL_THREADS,
+    /**
+     * Fields are resolved in parallel on the configured {@link ManagedExecutor}.
+     */
+    EXECUTOR;
+
+    public static ExecutionMode fromConfig(String value) {
+        if (value == null) {
+            return DEFAULT;
+        }
+        return ExecutionMode.valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+}
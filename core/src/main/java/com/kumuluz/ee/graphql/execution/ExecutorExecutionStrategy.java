@@ -0,0 +1,63 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.execution;
+
+import graphql.execution.ExecutionContext;
+import graphql.execution.ExecutionStrategyParameters;
+import graphql.execution.FetchedValue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * ExecutorExecutionStrategy class - resolves fields in parallel on the provided executor
+ *
+ * Unlike {@link graphql.execution.ExecutorServiceExecutionStrategy}, threads never block while waiting for nested
+ * fields, so a bounded pool cannot deadlock. Must only be used for queries, mutations are required to run serially.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class ExecutorExecutionStrategy extends StreamingExecutionStrategy {
+
+    private final Executor executor;
+
+    public ExecutorExecutionStrategy(Executor executor) {
+        this(executor, false);
+    }
+
+    /**
+     * @param streaming whether {@link com.kumuluz.ee.graphql.utils.ResultStream} lists are streamed, see
+     *                  {@link StreamingExecutionStrategy}
+     */
+    public ExecutorExecutionStrategy(Executor executor, boolean streaming) {
+        super(streaming);
+        this.executor = executor;
+    }
+
+    @Override
+    protected CompletableFuture<FetchedValue> fetchField(ExecutionContext executionContext, ExecutionStrategyParameters parameters) {
+        return CompletableFuture
+                .supplyAsync(() -> super.fetchField(executionContext, parameters), executor)
+                .thenCompose(Function.identity());
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.execution;
+
+import com.kumuluz.ee.configuration.utils.ConfigurationUtil;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * ManagedExecutor class - configurable thread pool used for parallel field resolution
+ *
+ * Started when the GraphQL servlet is initialized and stopped (together with its MBean) when the servlet is destroyed.
+ * Exported over JMX as {@code com.kumuluz.ee.graphql:type=ExecutionExecutor}.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class ManagedExecutor implements ManagedExecutorMXBean {
+
+    public enum RejectionPolicy {
+        /**
+         * Rejected fields fail the request.
+         */
+        ABORT,
+        /**
+         * Rejected fields are resolved on the submitting thread.
+         */
+        CALLER_RUNS
+    }
+
+    private static final Logger LOG = Logger.getLogger(ManagedExecutor.class.getName());
+    private static final String OBJECT_NAME = "com.kumuluz.ee.graphql:type=ExecutionExecutor";
+
+    private static ManagedExecutor instance;
+
+    private final ThreadPoolExecutor pool;
+    private final RejectionPolicy rejectionPolicy;
+    private final long shutdownTimeout;
+    private final AtomicLong rejected = new AtomicLong();
+
+    private ManagedExecutor(int coreThreads, int maxThreads, int queueLength, long keepAlive,
+                            RejectionPolicy rejectionPolicy, long shutdownTimeout) {
+        this.rejectionPolicy = rejectionPolicy;
+        this.shutdownTimeout = shutdownTimeout;
+
+        BlockingQueue<Runnable> queue = (queueLength > 0) ? new ArrayBlockingQueue<>(queueLength) : new SynchronousQueue<>();
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread thread = new Thread(r, "graphql-executor-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        this.pool = new ThreadPoolExecutor(coreThreads, maxThreads, keepAlive, TimeUnit.SECONDS, queue, threadFactory,
+                this::reject);
+    }
+
+    public static synchronized ManagedExecutor start() {
+        if (instance != null) {
+            return instance;
+        }
+
+        ConfigurationUtil configurationUtil = ConfigurationUtil.getInstance();
+        String prefix = "kumuluzee.graphql.execution.executor.";
+
+        int coreThreads = configurationUtil.getInteger(prefix + "core-threads")
+                .orElse(Runtime.getRuntime().availableProcessors());
+        int maxThreads = Math.max(coreThreads, configurationUtil.getInteger(prefix + "max-threads").orElse(coreThreads));
+        int queueLength = configurationUtil.getInteger(prefix + "queue-length").orElse(1000);
+        long keepAlive = configurationUtil.getInteger(prefix + "keep-alive-seconds").orElse(60);
+        long shutdownTimeout = configurationUtil.getInteger(prefix + "shutdown-timeout-seconds").orElse(30);
+        RejectionPolicy rejectionPolicy = RejectionPolicy.valueOf(configurationUtil.get(prefix + "rejection-policy")
+                .orElse("caller-runs").trim().toUpperCase().replace('-', '_'));
+
+        instance = new ManagedExecutor(coreThreads, maxThreads, queueLength, keepAlive, rejectionPolicy, shutdownTimeout);
+        instance.registerMBean();
+
+        LOG.info("GraphQL executor started with " + coreThreads + "-" + maxThreads + " threads, queue length " +
+                queueLength + " and rejection policy " + rejectionPolicy + ".");
+
+        return instance;
+    }
+
+    public static synchronized ManagedExecutor getInstance() {
+        return instance;
+    }
+
+    public static synchronized void stop() {
+        if (instance == null) {
+            return;
+        }
+
+        ManagedExecutor executor = instance;
+        instance = null;
+
+        executor.unregisterMBean();
+        executor.pool.shutdown();
+        try {
+            if (!executor.pool.awaitTermination(executor.shutdownTimeout, TimeUnit.SECONDS)) {
+                LOG.warning("GraphQL executor did not terminate in " + executor.shutdownTimeout +
+                        " seconds. Cancelling remaining tasks.");
+                executor.pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public ExecutorService getExecutorService() {
+        return pool;
+    }
+
+    private void reject(Runnable runnable, ThreadPoolExecutor executor) {
+        rejected.incrementAndGet();
+        if (rejectionPolicy == RejectionPolicy.CALLER_RUNS && !executor.isShutdown()) {
+            runnable.run();
+        } else {
+            throw new RejectedExecutionException("GraphQL executor is saturated.");
+        }
+    }
+
+    private void registerMBean() {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(this, objectName);
+            }
+        } catch (Exception e) {
+            LOG.warning("Unable to register GraphQL executor MBean: " + e.getMessage());
+        }
+    }
+
+    private void unregisterMBean() {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (Exception e) {
+            LOG.warning("Unable to unregister GraphQL executor MBean: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public int getCorePoolSize() {
+        return pool.getCorePoolSize();
+    }
+
+    @Override
+    public int getMaximumPoolSize() {
+        return pool.getMaximumPoolSize();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return pool.getPoolSize();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return pool.getActiveCount();
+    }
+
+    @Override
+    public int getQueueSize() {
+        return pool.getQueue().size();
+    }
+
+    @Override
+    public int getQueueRemainingCapacity() {
+        return pool.getQueue().remainingCapacity();
+    }
+
+    @Override
+    public long getCompletedTaskCount() {
+        return pool.getCompletedTaskCount();
+    }
+
+    @Override
+    public long getRejectedTaskCount() {
+        return rejected.get();
+    }
+}
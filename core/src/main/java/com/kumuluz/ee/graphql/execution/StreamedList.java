@@ -0,0 +1,80 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.execution;
+
+import graphql.GraphQLError;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * StreamedList class - list value of the execution result, whose elements are completed while it is being iterated
+ *
+ * Errors of elements are collected while the list is iterated and must be added to the response after the list has
+ * been written. The list must be closed after it has been written, also if writing fails, so that the source of the
+ * elements is released.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public final class StreamedList implements Iterable<Object>, AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(StreamedList.class.getName());
+
+    private final Iterable<?> source;
+    private final Function<StreamedList, Iterator<Object>> elements;
+    private final List<GraphQLError> errors = new CopyOnWriteArrayList<>();
+
+    StreamedList(Iterable<?> source, Function<StreamedList, Iterator<Object>> elements) {
+        this.source = source;
+        this.elements = elements;
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+        return elements.apply(this);
+    }
+
+    void addError(GraphQLError error) {
+        errors.add(error);
+    }
+
+    /**
+     * Returns errors of the elements, which have been completed so far.
+     */
+    public List<GraphQLError> getErrors() {
+        return errors;
+    }
+
+    @Override
+    public void close() {
+        if (source instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) source).close();
+            } catch (Exception e) {
+                LOG.warning("Unable to close streamed list: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.execution;
+
+import com.kumuluz.ee.graphql.utils.ResultStream;
+import graphql.ExceptionWhileDataFetching;
+import graphql.ExecutionResult;
+import graphql.ExecutionResultImpl;
+import graphql.GraphQLError;
+import graphql.execution.*;
+import graphql.schema.GraphQLList;
+import graphql.schema.GraphQLType;
+import graphql.schema.GraphQLTypeUtil;
+import org.dataloader.DataLoaderRegistry;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * StreamingExecutionStrategy class - completes {@link ResultStream} lists lazily while the response is being written
+ *
+ * Elements of a streamed list are not completed when the field is resolved. The list is returned as a lazy
+ * {@link StreamedList}, which completes each element when the response writer reaches it, so neither the source
+ * elements nor their results are kept in memory. Errors of streamed elements are collected by the list and written
+ * after the data.
+ *
+ * Only lists with nullable elements are streamed. A null element of a non-null list type nulls the whole list, which
+ * is impossible once the list is being written, so such lists are completed as usual.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class StreamingExecutionStrategy extends AsyncExecutionStrategy {
+
+    private final boolean streaming;
+
+    public StreamingExecutionStrategy() {
+        this(true);
+    }
+
+    public StreamingExecutionStrategy(DataFetcherExceptionHandler exceptionHandler) {
+        super(exceptionHandler);
+        this.streaming = true;
+    }
+
+    /**
+     * @param streaming whether {@link ResultStream} lists are streamed or completed as usual
+     */
+    protected StreamingExecutionStrategy(boolean streaming) {
+        super();
+        this.streaming = streaming;
+    }
+
+    @Override
+    protected FieldValueInfo completeValueForList(ExecutionContext executionContext, ExecutionStrategyParameters parameters,
+                                                  Iterable<Object> iterableValues) {
+        GraphQLType listType = GraphQLTypeUtil.unwrapNonNull(parameters.getExecutionStepInfo().getType());
+        if (!streaming || !(iterableValues instanceof ResultStream) || !(listType instanceof GraphQLList) ||
+                GraphQLTypeUtil.isNonNull(((GraphQLList) listType).getWrappedType())) {
+            return super.completeValueForList(executionContext, parameters, iterableValues);
+        }
+
+        StreamedList elements = new StreamedList(iterableValues,
+                list -> new StreamedElements(executionContext, parameters, iterableValues.iterator(), list));
+        ExecutionResult result = new ExecutionResultImpl(elements, Collections.emptyList());
+        return FieldValueInfo.newFieldValueInfo(FieldValueInfo.CompleteValueType.LIST)
+                .fieldValue(CompletableFuture.completedFuture(result))
+                .build();
+    }
+
+    private final class StreamedElements implements Iterator<Object> {
+
+        private final ExecutionContext executionContext;
+        private final ExecutionStrategyParameters parameters;
+        private final Iterator<Object> values;
+        private final StreamedList list;
+        private int index;
+
+        private StreamedElements(ExecutionContext executionContext, ExecutionStrategyParameters parameters,
+                                 Iterator<Object> values, StreamedList list) {
+            this.executionContext = executionContext;
+            this.parameters = parameters;
+            this.values = values;
+            this.list = list;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return values.hasNext();
+        }
+
+        @Override
+        public Object next() {
+            Object item = values.next();
+            int currentIndex = index++;
+
+            ExecutionStepInfo stepInfo = executionStepInfoFactory
+                    .newExecutionStepInfoForListElement(parameters.getExecutionStepInfo(), currentIndex);
+            NonNullableFieldValidator nonNullableFieldValidator = new NonNullableFieldValidator(executionContext, stepInfo);
+            ExecutionPath path = parameters.getPath().segment(currentIndex);
+            ExecutionStrategyParameters elementParameters = parameters.transform(builder -> builder
+                    .executionStepInfo(stepInfo)
+                    .nonNullFieldValidator(nonNullableFieldValidator)
+                    // size of a streamed list is not known until it has been read
+                    .listSize(-1)
+                    .currentListIndex(currentIndex)
+                    .path(path)
+                    .source(item));
+
+            int errorCount = executionContext.getErrors().size();
+            Object data = null;
+            try {
+                CompletableFuture<ExecutionResult> value = completeValue(executionContext, elementParameters)
+                        .getFieldValue();
+                // the execution has finished, so nobody else dispatches data loaders used by the element
+                DataLoaderRegistry registry = executionContext.getDataLoaderRegistry();
+                while (!value.isDone() && registry != null && registry.dispatchDepth() > 0) {
+                    registry.dispatchAll();
+                }
+                data = value.join().getData();
+            } catch (NonNullableFieldWasNullException e) {
+                // the error has been added by the validator, the element is nullable and becomes null
+            } catch (CompletionException e) {
+                if (!(e.getCause() instanceof NonNullableFieldWasNullException)) {
+                    Throwable cause = (e.getCause() == null) ? e : e.getCause();
+                    executionContext.addError(new ExceptionWhileDataFetching(path, cause,
+                            parameters.getField().getSingleField().getSourceLocation()));
+                }
+            }
+
+            List<GraphQLError> errors = executionContext.getErrors();
+            for (int i = errorCount; i < errors.size(); i++) {
+                list.addError(errors.get(i));
+            }
+            return data;
+        }
+    }
+}
@@ -28,18 +28,23 @@ import javax.annotation.processing.Filer;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.RoundEnvironment;
 import javax.lang.model.SourceVersion;
-import javax.lang.model.element.Element;
-import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.*;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
 import javax.tools.FileObject;
 import javax.tools.StandardLocation;
 import java.io.*;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
 
 public class AnnotationProcessor extends AbstractProcessor {
 
+    private static final String GENERATE_FETCHERS_OPTION = "kumuluzee.graphql.generateFetchers";
+
     private Filer filer;
+    private Elements elementUtils;
+    private Types typeUtils;
+    private DataFetcherGenerator dataFetcherGenerator;
 
     @Override
     public boolean process(Set<? extends TypeElement> set, RoundEnvironment roundEnvironment) {
@@ -47,6 +52,16 @@ public class AnnotationProcessor extends AbstractProcessor {
         Set<String> serviceClassNames = new HashSet<>();
         for (Element element : annotatedClasses) {
             serviceClassNames.add(element.toString());
+            if (element instanceof TypeElement) {
+                TypeElement typeElement = (TypeElement) element;
+                if (dataFetcherGenerator != null) {
+                    try {
+                        dataFetcherGenerator.generate(typeElement);
+                    } catch (IOException e) {
+                        warning("Unable to generate data fetchers: " + e.getMessage(), typeElement);
+                    }
+                }
+            }
         }
 
         // write annotated class names to service file
@@ -54,7 +69,7 @@ public class AnnotationProcessor extends AbstractProcessor {
             try {
                 writeServiceFile(serviceClassNames, "META-INF/kumuluzee/graphql/java.lang.Object");
             } catch (IOException e) {
-                e.printStackTrace();
+                error("Unable to write GraphQL class list: " + e.getMessage());
             }
         }
 
@@ -69,18 +84,33 @@ public class AnnotationProcessor extends AbstractProcessor {
             try {
                 writeServiceFile(settingsClassNames, "META-INF/services/com.kumuluz.ee.graphql.GraphQLApplication");
             } catch (IOException e) {
-                e.printStackTrace();
+                error("Unable to write GraphQLApplication service file: " + e.getMessage());
             }
         }
 
         return false;
     }
 
+    static String getAnnotationValue(AnnotationMirror annotation, String name, String defaultValue) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                String value = String.valueOf(entry.getValue().getValue());
+                return value.isEmpty() ? defaultValue : value;
+            }
+        }
+        return defaultValue;
+    }
+
     @Override
     public Set<String> getSupportedAnnotationTypes() {
         return Collections.singleton("*");
     }
 
+    @Override
+    public Set<String> getSupportedOptions() {
+        return Collections.singleton(GENERATE_FETCHERS_OPTION);
+    }
+
     @Override
     public SourceVersion getSupportedSourceVersion() {
         return SourceVersion.latest();
@@ -90,6 +120,23 @@ public class AnnotationProcessor extends AbstractProcessor {
     public synchronized void init(ProcessingEnvironment processingEnvironment) {
         super.init(processingEnvironment);
         filer = processingEnvironment.getFiler();
+        elementUtils = processingEnvironment.getElementUtils();
+        typeUtils = processingEnvironment.getTypeUtils();
+        if ("true".equals(processingEnvironment.getOptions().get(GENERATE_FETCHERS_OPTION))) {
+            dataFetcherGenerator = new DataFetcherGenerator(filer, elementUtils, typeUtils);
+        }
+    }
+
+    private void warning(String message, Element element) {
+        if (element != null) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, message, element);
+        } else {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, message);
+        }
+    }
+
+    private void error(String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message);
     }
 
     private void writeServiceFile(Set<String> serviceClassNames, String serviceFileName) throws IOException {
@@ -101,7 +148,7 @@ public class AnnotationProcessor extends AbstractProcessor {
                 writeServiceFile(serviceClassNames, serviceFileName, file);
                 return;
             } catch (IllegalStateException e) {
-                e.printStackTrace();
+                warning("Unable to update " + serviceFileName + ", recreating it: " + e.getMessage(), null);
             }
         }
         writeServiceFile(serviceClassNames, serviceFileName, null);
@@ -0,0 +1,297 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.processor;
+
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * DataFetcherGenerator class - generates direct-invocation data fetchers for GraphQL classes
+ *
+ * Only methods with plain argument and return types are generated. Methods using SPQR features, which need the
+ * reflective data fetcher (environment injection, custom converters, ...), and methods declaring checked exceptions
+ * are skipped.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+class DataFetcherGenerator {
+
+    private static final String SPQR_ANNOTATIONS = "io.leangen.graphql.annotations.";
+    private static final String GRAPHQL_QUERY = SPQR_ANNOTATIONS + "GraphQLQuery";
+    private static final String GRAPHQL_MUTATION = SPQR_ANNOTATIONS + "GraphQLMutation";
+    private static final String GRAPHQL_ARGUMENT = SPQR_ANNOTATIONS + "GraphQLArgument";
+    private static final String GRAPHQL_CONTEXT = SPQR_ANNOTATIONS + "GraphQLContext";
+    private static final String GRAPHQL_NON_NULL = SPQR_ANNOTATIONS + "GraphQLNonNull";
+    private static final String GRAPHQL_TYPE = SPQR_ANNOTATIONS + "types.GraphQLType";
+
+    private static final Set<String> SIMPLE_TYPES = new HashSet<>(Arrays.asList(
+            "java.lang.String", "java.lang.Boolean", "java.lang.Byte", "java.lang.Short", "java.lang.Integer",
+            "java.lang.Long", "java.lang.Float", "java.lang.Double"));
+    private static final Set<String> COLLECTION_TYPES = new HashSet<>(Arrays.asList(
+            "java.util.List", "java.util.Set", "java.util.Collection"));
+    private static final List<String> UNSUPPORTED_OUTPUT_TYPES = Arrays.asList(
+            "java.util.Map", "java.util.Optional", "java.util.OptionalInt", "java.util.OptionalLong",
+            "java.util.OptionalDouble", "java.util.stream.", "java.util.concurrent.", "org.reactivestreams.");
+    private static final String FETCHERS_BASE_CLASS = "com.kumuluz.ee.graphql.schema.GeneratedDataFetchers";
+    private static final String FETCHERS_CLASS_SUFFIX = "_GraphQLDataFetchers";
+    private static final String INPUT_CLASSES_PACKAGE = "com.kumuluz.ee.graphql.classes.";
+
+    private final Filer filer;
+    private final Elements elementUtils;
+    private final Types typeUtils;
+
+    DataFetcherGenerator(Filer filer, Elements elementUtils, Types typeUtils) {
+        this.filer = filer;
+        this.elementUtils = elementUtils;
+        this.typeUtils = typeUtils;
+    }
+
+    void generate(TypeElement typeElement) throws IOException {
+        if (!typeElement.getModifiers().contains(Modifier.PUBLIC) || !typeElement.getTypeParameters().isEmpty()) {
+            return;
+        }
+
+        List<String> fetchers = new ArrayList<>();
+        for (Element member : elementUtils.getAllMembers(typeElement)) {
+            if (member.getKind() == ElementKind.METHOD) {
+                String fetcher = generateFetcher((ExecutableElement) member);
+                if (fetcher != null) {
+                    fetchers.add(fetcher);
+                }
+            }
+        }
+        if (fetchers.isEmpty()) {
+            return;
+        }
+
+        String packageName = elementUtils.getPackageOf(typeElement).getQualifiedName().toString();
+        String binaryName = elementUtils.getBinaryName(typeElement).toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+                .replace('$', '_') + FETCHERS_CLASS_SUFFIX;
+        String targetName = typeElement.getQualifiedName().toString();
+
+        try (Writer writer = filer.createSourceFile(
+                (packageName.isEmpty() ? "" : packageName + ".") + simpleName, typeElement).openWriter()) {
+            if (!packageName.isEmpty()) {
+                writer.write("package " + packageName + ";\n\n");
+            }
+            writer.write("/**\n * Generated by KumuluzEE GraphQL annotation processor. Do not edit.\n */\n");
+            writer.write("public final class " + simpleName + " extends " + FETCHERS_BASE_CLASS +
+                    "<" + targetName + "> {\n\n");
+            writer.write("    public " + simpleName + "() {\n");
+            writer.write("        super(" + targetName + ".class);\n");
+            writer.write("    }\n\n");
+            writer.write("    @Override\n");
+            writer.write("    protected java.util.List<FetcherDefinition> createFetchers(" + targetName + " target) {\n");
+            writer.write("        java.util.List<FetcherDefinition> fetchers = new java.util.ArrayList<>();\n");
+            for (String fetcher : fetchers) {
+                writer.write("        fetchers.add(" + fetcher + ");\n");
+            }
+            writer.write("        return fetchers;\n");
+            writer.write("    }\n");
+            writer.write("}\n");
+        }
+    }
+
+    private String generateFetcher(ExecutableElement method) {
+        if (!method.getModifiers().contains(Modifier.PUBLIC) || method.getModifiers().contains(Modifier.STATIC) ||
+                !method.getTypeParameters().isEmpty() || method.getReturnType().getKind() == TypeKind.VOID ||
+                !isSupportedOutput(method.getReturnType()) || declaresCheckedExceptions(method)) {
+            return null;
+        }
+
+        String kind = null;
+        String name = "";
+        for (AnnotationMirror annotation : method.getAnnotationMirrors()) {
+            String annotationName = annotation.getAnnotationType().toString();
+            if (annotationName.equals(GRAPHQL_QUERY)) {
+                kind = "query";
+                name = AnnotationProcessor.getAnnotationValue(annotation, "name", "");
+            } else if (annotationName.equals(GRAPHQL_MUTATION)) {
+                kind = "mutation";
+                name = AnnotationProcessor.getAnnotationValue(annotation, "name", "");
+            } else if (annotationName.startsWith(SPQR_ANNOTATIONS) && !annotationName.equals(GRAPHQL_NON_NULL)) {
+                return null;
+            }
+        }
+        if (kind == null) {
+            return null;
+        }
+
+        String contextTypeName = null;
+        List<String> argumentNames = new ArrayList<>();
+        List<String> invocationArguments = new ArrayList<>();
+        for (VariableElement parameter : method.getParameters()) {
+            String argumentName = parameter.getSimpleName().toString();
+            boolean context = false;
+            for (AnnotationMirror annotation : parameter.getAnnotationMirrors()) {
+                String annotationName = annotation.getAnnotationType().toString();
+                if (annotationName.equals(GRAPHQL_ARGUMENT)) {
+                    argumentName = AnnotationProcessor.getAnnotationValue(annotation, "name", argumentName);
+                } else if (annotationName.equals(GRAPHQL_CONTEXT)) {
+                    context = true;
+                } else if (annotationName.startsWith(SPQR_ANNOTATIONS) && !annotationName.equals(GRAPHQL_NON_NULL)) {
+                    return null;
+                }
+            }
+
+            TypeMirror type = parameter.asType();
+            if (context) {
+                if (contextTypeName != null || type.getKind() != TypeKind.DECLARED ||
+                        !((DeclaredType) type).getTypeArguments().isEmpty()) {
+                    return null;
+                }
+                contextTypeName = getGraphQLTypeName((TypeElement) ((DeclaredType) type).asElement());
+                invocationArguments.add("(" + getTypeText(type) + ") env.getSource()");
+            } else {
+                String typeArgument = getArgumentType(type);
+                if (typeArgument == null) {
+                    return null;
+                }
+                argumentNames.add(argumentName);
+                invocationArguments.add("argument(env, \"" + escape(argumentName) + "\", " + typeArgument + ")");
+            }
+        }
+
+        String fetcher = "env -> target." + method.getSimpleName() + "(" + String.join(", ", invocationArguments) + ")";
+        String argumentList = argumentNames.isEmpty() ? "java.util.Collections.emptyList()" :
+                "java.util.Arrays.asList(\"" + String.join("\", \"", argumentNames) + "\")";
+
+        if (contextTypeName != null) {
+            if (!kind.equals("query")) {
+                return null;
+            }
+            return "field(\"" + escape(contextTypeName) + "\", \"" + escape(name) + "\", \"" + method.getSimpleName() +
+                    "\", " + argumentList + ", " + fetcher + ")";
+        }
+        return kind + "(\"" + escape(name) + "\", \"" + method.getSimpleName() + "\", " + argumentList + ", " +
+                fetcher + ")";
+    }
+
+    /**
+     * Returns the class literal or type reference used for argument conversion or null, if the type is not supported.
+     */
+    private String getArgumentType(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return type.getKind() == TypeKind.CHAR ? null : type.toString() + ".class";
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        DeclaredType declaredType = (DeclaredType) type;
+        TypeElement element = (TypeElement) declaredType.asElement();
+        String qualifiedName = element.getQualifiedName().toString();
+
+        if (declaredType.getTypeArguments().isEmpty() && isSimpleType(element)) {
+            return qualifiedName + ".class";
+        }
+        if (declaredType.getTypeArguments().isEmpty() && qualifiedName.startsWith(INPUT_CLASSES_PACKAGE)) {
+            return qualifiedName + ".class";
+        }
+        if (COLLECTION_TYPES.contains(qualifiedName) && declaredType.getTypeArguments().size() == 1) {
+            TypeMirror elementType = declaredType.getTypeArguments().get(0);
+            if (elementType.getKind() == TypeKind.DECLARED &&
+                    ((DeclaredType) elementType).getTypeArguments().isEmpty() &&
+                    isSimpleType((TypeElement) ((DeclaredType) elementType).asElement())) {
+                return "new com.fasterxml.jackson.core.type.TypeReference<" + getTypeText(type) + ">() {}";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns true, if the method declares checked exceptions, which can not be thrown from a data fetcher lambda.
+     */
+    private boolean declaresCheckedExceptions(ExecutableElement method) {
+        TypeMirror runtimeException = elementUtils.getTypeElement("java.lang.RuntimeException").asType();
+        TypeMirror error = elementUtils.getTypeElement("java.lang.Error").asType();
+        for (TypeMirror thrownType : method.getThrownTypes()) {
+            if (!typeUtils.isAssignable(thrownType, runtimeException) && !typeUtils.isAssignable(thrownType, error)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSimpleType(TypeElement element) {
+        return element.getKind() == ElementKind.ENUM || SIMPLE_TYPES.contains(element.getQualifiedName().toString());
+    }
+
+    private boolean isSupportedOutput(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return true;
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            return type.getKind().isPrimitive();
+        }
+        DeclaredType declaredType = (DeclaredType) type;
+        String qualifiedName = ((TypeElement) declaredType.asElement()).getQualifiedName().toString();
+        for (String unsupported : UNSUPPORTED_OUTPUT_TYPES) {
+            if (qualifiedName.startsWith(unsupported)) {
+                return false;
+            }
+        }
+        for (TypeMirror typeArgument : declaredType.getTypeArguments()) {
+            if (!isSupportedOutput(typeArgument)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String getGraphQLTypeName(TypeElement element) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (annotation.getAnnotationType().toString().equals(GRAPHQL_TYPE)) {
+                return AnnotationProcessor.getAnnotationValue(annotation, "name", element.getSimpleName().toString());
+            }
+        }
+        return element.getSimpleName().toString();
+    }
+
+    private String getTypeText(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return type.toString();
+        }
+        DeclaredType declaredType = (DeclaredType) type;
+        StringBuilder text = new StringBuilder(((TypeElement) declaredType.asElement()).getQualifiedName());
+        if (!declaredType.getTypeArguments().isEmpty()) {
+            List<String> typeArguments = new ArrayList<>();
+            for (TypeMirror typeArgument : declaredType.getTypeArguments()) {
+                typeArguments.add(getTypeText(typeArgument));
+            }
+            text.append('<').append(String.join(", ", typeArguments)).append('>');
+        }
+        return text.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.schema;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import graphql.schema.*;
+import io.leangen.geantyref.GenericTypeReflector;
+import io.leangen.graphql.execution.GlobalEnvironment;
+import io.leangen.graphql.metadata.strategy.value.ValueMapper;
+import io.leangen.graphql.metadata.strategy.value.ValueMapperFactory;
+import io.leangen.graphql.metadata.strategy.value.jackson.JacksonValueMapperFactory;
+
+import java.beans.Introspector;
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * GeneratedDataFetchers class - base class for data fetchers generated by the annotation processor
+ *
+ * Generated data fetchers invoke the operation methods of a {@link com.kumuluz.ee.graphql.annotations.GraphQLClass}
+ * directly, instead of through reflection. They replace the data fetchers of the generated schema only where the field
+ * and its arguments match the method they were generated from. Arguments are converted with the value mapper of the
+ * schema, but resolver interceptors and output converters of SPQR are bypassed, so they are only used when enabled.
+ *
+ * @param <T> GraphQL class
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public abstract class GeneratedDataFetchers<T> {
+
+    public static final String CLASS_SUFFIX = "_GraphQLDataFetchers";
+
+    private static final Logger LOG = Logger.getLogger(GeneratedDataFetchers.class.getName());
+    private static final Map<Class<?>, Object> PRIMITIVE_DEFAULTS = new HashMap<>();
+
+    static {
+        PRIMITIVE_DEFAULTS.put(boolean.class, false);
+        PRIMITIVE_DEFAULTS.put(byte.class, (byte) 0);
+        PRIMITIVE_DEFAULTS.put(short.class, (short) 0);
+        PRIMITIVE_DEFAULTS.put(int.class, 0);
+        PRIMITIVE_DEFAULTS.put(long.class, 0L);
+        PRIMITIVE_DEFAULTS.put(float.class, 0f);
+        PRIMITIVE_DEFAULTS.put(double.class, 0d);
+    }
+
+    private final Class<T> targetClass;
+    private ValueMapper valueMapper;
+
+    protected GeneratedDataFetchers(Class<T> targetClass) {
+        this.targetClass = targetClass;
+    }
+
+    protected abstract List<FetcherDefinition> createFetchers(T target);
+
+    /**
+     * Finds generated data fetchers for the given GraphQL class.
+     *
+     * @return generated data fetchers or null, if they were not generated for this class
+     */
+    public static GeneratedDataFetchers<?> find(Class<?> graphQLClass) {
+        String className = graphQLClass.getName().replace('$', '_') + CLASS_SUFFIX;
+        try {
+            Class<?> fetchersClass = Class.forName(className, true, graphQLClass.getClassLoader());
+            return (GeneratedDataFetchers<?>) fetchersClass.getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            LOG.warning("Unable to instantiate generated data fetchers " + className + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Replaces data fetchers of the matching fields in the schema with the generated ones.
+     *
+     * @param valueMapper value mapper used by the schema, see {@link ValueMapperCapture}
+     */
+    public GraphQLSchema apply(GraphQLSchema schema, Object target, ValueMapper valueMapper) {
+        this.valueMapper = valueMapper;
+        GraphQLCodeRegistry.Builder codeRegistry = GraphQLCodeRegistry.newCodeRegistry(schema.getCodeRegistry());
+        int replaced = 0;
+
+        for (FetcherDefinition definition : createFetchers(targetClass.cast(target))) {
+            GraphQLObjectType parentType = getParentType(schema, definition);
+            GraphQLFieldDefinition field = (parentType != null) ? findField(parentType, definition) : null;
+            if (field == null) {
+                LOG.fine("No matching field found for generated data fetcher of " + targetClass.getName() + "." +
+                        definition.getMethodName() + ". Using reflective data fetcher.");
+                continue;
+            }
+            codeRegistry.dataFetcher(FieldCoordinates.coordinates(parentType.getName(), field.getName()),
+                    definition.getDataFetcher());
+            replaced++;
+        }
+
+        if (replaced == 0) {
+            return schema;
+        }
+        return schema.transform(builder -> builder.codeRegistry(codeRegistry.build()));
+    }
+
+    private static GraphQLObjectType getParentType(GraphQLSchema schema, FetcherDefinition definition) {
+        switch (definition.getKind()) {
+            case QUERY:
+                return schema.getQueryType();
+            case MUTATION:
+                return schema.getMutationType();
+            default:
+                GraphQLType type = schema.getType(definition.getTypeName());
+                return (type instanceof GraphQLObjectType) ? (GraphQLObjectType) type : null;
+        }
+    }
+
+    private static GraphQLFieldDefinition findField(GraphQLObjectType parentType, FetcherDefinition definition) {
+        List<String> candidates = new ArrayList<>();
+        if (!definition.getName().isEmpty()) {
+            candidates.add(definition.getName());
+        } else {
+            candidates.add(definition.getMethodName());
+            candidates.add(getPropertyName(definition.getMethodName()));
+        }
+
+        for (String candidate : candidates) {
+            GraphQLFieldDefinition field = parentType.getFieldDefinition(candidate);
+            if (field == null) {
+                continue;
+            }
+            Set<String> argumentNames = new HashSet<>();
+            for (GraphQLArgument argument : field.getArguments()) {
+                argumentNames.add(argument.getName());
+            }
+            if (argumentNames.equals(new HashSet<>(definition.getArgumentNames()))) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    private static String getPropertyName(String methodName) {
+        if (methodName.startsWith("get") && methodName.length() > 3) {
+            return Introspector.decapitalize(methodName.substring(3));
+        }
+        if (methodName.startsWith("is") && methodName.length() > 2) {
+            return Introspector.decapitalize(methodName.substring(2));
+        }
+        return methodName;
+    }
+
+    protected static FetcherDefinition query(String name, String methodName, List<String> argumentNames,
+                                             DataFetcher<?> dataFetcher) {
+        return new FetcherDefinition(FetcherDefinition.Kind.QUERY, null, name, methodName, argumentNames, dataFetcher);
+    }
+
+    protected static FetcherDefinition mutation(String name, String methodName, List<String> argumentNames,
+                                                DataFetcher<?> dataFetcher) {
+        return new FetcherDefinition(FetcherDefinition.Kind.MUTATION, null, name, methodName, argumentNames, dataFetcher);
+    }
+
+    protected static FetcherDefinition field(String typeName, String name, String methodName, List<String> argumentNames,
+                                             DataFetcher<?> dataFetcher) {
+        return new FetcherDefinition(FetcherDefinition.Kind.FIELD, typeName, name, methodName, argumentNames, dataFetcher);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected <V> V argument(DataFetchingEnvironment environment, String name, Class<V> type) {
+        Object value = environment.getArgument(name);
+        if (value == null) {
+            return (V) PRIMITIVE_DEFAULTS.get(type);
+        }
+        Class<?> boxedType = box(type);
+        if (boxedType.isInstance(value)) {
+            return (V) value;
+        }
+        if (value instanceof Number) {
+            Number number = (Number) value;
+            if (boxedType == Integer.class) {
+                return (V) Integer.valueOf(number.intValue());
+            } else if (boxedType == Long.class) {
+                return (V) Long.valueOf(number.longValue());
+            } else if (boxedType == Double.class) {
+                return (V) Double.valueOf(number.doubleValue());
+            } else if (boxedType == Float.class) {
+                return (V) Float.valueOf(number.floatValue());
+            } else if (boxedType == Short.class) {
+                return (V) Short.valueOf(number.shortValue());
+            } else if (boxedType == Byte.class) {
+                return (V) Byte.valueOf(number.byteValue());
+            }
+        }
+        if (boxedType == String.class) {
+            return (V) value.toString();
+        }
+        return convert(value, type);
+    }
+
+    protected <V> V argument(DataFetchingEnvironment environment, String name, TypeReference<V> type) {
+        Object value = environment.getArgument(name);
+        if (value == null) {
+            return null;
+        }
+        return convert(value, type.getType());
+    }
+
+    private <V> V convert(Object value, Type type) {
+        return valueMapper.fromInput(value, value.getClass(), GenericTypeReflector.annotate(type));
+    }
+
+    private static Class<?> box(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        }
+        return PRIMITIVE_DEFAULTS.get(type).getClass();
+    }
+
+    /**
+     * ValueMapperCapture class - value mapper factory, which remembers the value mapper created for the schema
+     */
+    public static class ValueMapperCapture implements ValueMapperFactory {
+
+        private final ValueMapperFactory delegate;
+        private ValueMapper valueMapper;
+
+        public ValueMapperCapture() {
+            this(JacksonValueMapperFactory.builder().build());
+        }
+
+        public ValueMapperCapture(ValueMapperFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public ValueMapper getValueMapper(Map<Class, List<Class<?>>> concreteSubTypes, GlobalEnvironment environment) {
+            valueMapper = delegate.getValueMapper(concreteSubTypes, environment);
+            return valueMapper;
+        }
+
+        /**
+         * Returns the value mapper created for the schema or null, if the schema has not been generated yet.
+         */
+        public ValueMapper getValueMapper() {
+            return valueMapper;
+        }
+    }
+
+    /**
+     * FetcherDefinition class - generated data fetcher and the field it was generated for
+     */
+    public static class FetcherDefinition {
+
+        public enum Kind {
+            QUERY, MUTATION, FIELD
+        }
+
+        private final Kind kind;
+        private final String typeName;
+        private final String name;
+        private final String methodName;
+        private final List<String> argumentNames;
+        private final DataFetcher<?> dataFetcher;
+
+        FetcherDefinition(Kind kind, String typeName, String name, String methodName, List<String> argumentNames,
+                          DataFetcher<?> dataFetcher) {
+            this.kind = kind;
+            this.typeName = typeName;
+            this.name = name;
+            this.methodName = methodName;
+            this.argumentNames = argumentNames;
+            this.dataFetcher = dataFetcher;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getTypeName() {
+            return typeName;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public List<String> getArgumentNames() {
+            return argumentNames;
+        }
+
+        public DataFetcher<?> getDataFetcher() {
+            return dataFetcher;
+        }
+    }
+}
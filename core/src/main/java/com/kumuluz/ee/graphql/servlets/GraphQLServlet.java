@@ -21,30 +21,50 @@
 
 package com.kumuluz.ee.graphql.servlets;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.kumuluz.ee.common.dependencies.EeComponentType;
 import com.kumuluz.ee.common.runtime.EeRuntime;
 import com.kumuluz.ee.common.runtime.EeRuntimeComponent;
 import com.kumuluz.ee.configuration.utils.ConfigurationUtil;
 import com.kumuluz.ee.graphql.GraphQLApplication;
+import com.kumuluz.ee.graphql.execution.ExecutionMode;
+import com.kumuluz.ee.graphql.execution.ExecutorExecutionStrategy;
+import com.kumuluz.ee.graphql.execution.ManagedExecutor;
+import com.kumuluz.ee.graphql.execution.StreamingExecutionStrategy;
+import com.kumuluz.ee.graphql.execution.VirtualThreads;
+import com.kumuluz.ee.graphql.schema.GeneratedDataFetchers;
+import com.kumuluz.ee.graphql.utils.ExecutionResultWriter;
 import com.kumuluz.ee.graphql.utils.QueryParameters;
+import com.kumuluz.ee.graphql.utils.SerializationFormat;
 import graphql.ExecutionInput;
+import graphql.ExceptionWhileDataFetching;
 import graphql.ExecutionResult;
 import graphql.GraphQL;
+import graphql.GraphQLError;
+import graphql.GraphQLException;
 import graphql.execution.ExecutionIdProvider;
 import graphql.execution.ExecutionStrategy;
 import graphql.execution.instrumentation.ChainedInstrumentation;
 import graphql.execution.preparsed.PreparsedDocumentProvider;
-import graphql.schema.GraphQLSchema;
+import graphql.language.*;
+import graphql.parser.InvalidSyntaxException;
+import graphql.parser.Parser;
+import graphql.schema.*;
 import io.leangen.graphql.GraphQLSchemaGenerator;
+import org.dataloader.DataLoaderRegistry;
 
 import javax.enterprise.inject.spi.CDI;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -64,6 +84,13 @@ public class GraphQLServlet extends HttpServlet {
     private PreparsedDocumentProvider preparsedDocumentProvider = null;
     private ExecutionIdProvider executionIdProvider = null;
     private boolean perRequest = false;
+    private ExecutorService executor = null;
+    private ExecutorService requestExecutor = null;
+    private boolean managedExecutor = false;
+    private ExecutionMode executionMode = ExecutionMode.DEFAULT;
+    private boolean streaming = false;
+    private ExecutionStrategy executionStrategy = null;
+    private boolean executionStrategyCreated = false;
     private static final Logger LOG = Logger.getLogger(GraphQLServlet.class.getName());
 
     @Override
@@ -76,16 +103,106 @@ public class GraphQLServlet extends HttpServlet {
         processRequest(req, resp);
     }
 
+    @Override
+    public void init() throws ServletException {
+        super.init();
+        ConfigurationUtil configurationUtil = ConfigurationUtil.getInstance();
+
+        executionMode = ExecutionMode.fromConfig(configurationUtil.get("kumuluzee.graphql.execution.mode").orElse(null));
+        streaming = configurationUtil.getBoolean("kumuluzee.graphql.execution.streaming").orElse(false);
+        if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+            if (VirtualThreads.isSupported()) {
+                if (configurationUtil.getBoolean("kumuluzee.graphql.execution.async-requests").orElse(false)) {
+                    executor = VirtualThreads.newExecutor("graphql-");
+                    requestExecutor = executor;
+                }
+            } else {
+                LOG.warning("Execution mode " + executionMode + " requires JDK 21 or newer. Using default execution mode.");
+                executionMode = ExecutionMode.DEFAULT;
+            }
+        }
+    }
+
+    /**
+     * Returns the query execution strategy of the configured execution mode, starting its executor, or null for the
+     * graphql-java default. Called only if the application does not provide its own query execution strategy.
+     */
+    private ExecutionStrategy createExecutionStrategy() {
+        if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+            if (executor == null) {
+                executor = VirtualThreads.newExecutor("graphql-");
+            }
+            return new ExecutorExecutionStrategy(executor, streaming);
+        }
+        if (executionMode == ExecutionMode.EXECUTOR) {
+            managedExecutor = true;
+            return new ExecutorExecutionStrategy(ManagedExecutor.start().getExecutorService(), streaming);
+        }
+        return streaming ? new StreamingExecutionStrategy() : null;
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        if (managedExecutor) {
+            ManagedExecutor.stop();
+        }
+        super.destroy();
+    }
+
     private void processRequest(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         QueryParameters parameters = QueryParameters.from(req);
         if (parameters.getQuery() == null) {
             resp.setStatus(400);
             return;
         }
-        processQuery(parameters, resp);
+        SerializationFormat format = getResponseFormat(req);
+        if (requestExecutor != null && req.isAsyncSupported()) {
+            AsyncContext asyncContext = req.startAsync();
+            try {
+                requestExecutor.execute(() -> {
+                    try {
+                        processQuery(parameters, format, (HttpServletResponse) asyncContext.getResponse());
+                    } catch (Exception e) {
+                        LOG.log(Level.SEVERE, "Asynchronous GraphQL request failed.", e);
+                        sendError((HttpServletResponse) asyncContext.getResponse());
+                    } finally {
+                        asyncContext.complete();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                LOG.warning("Request rejected: " + e.getMessage());
+                resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                asyncContext.complete();
+            }
+        } else {
+            processQuery(parameters, format, resp);
+        }
+    }
+
+    private static void sendError(HttpServletResponse response) {
+        if (response.isCommitted()) {
+            return;
+        }
+        try {
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        } catch (IOException | IllegalStateException e) {
+            LOG.log(Level.FINE, "Unable to send the error response.", e);
+        }
+    }
+
+    private SerializationFormat getResponseFormat(HttpServletRequest req) {
+        SerializationFormat format = SerializationFormat.fromAccept(req.getHeader("Accept"));
+        if (format == null) {
+            // respond in the same format as the request, if the client did not state a preference
+            format = SerializationFormat.fromContentType(req.getContentType());
+        }
+        return (format != null) ? format : SerializationFormat.JSON;
     }
 
-    private void processQuery(QueryParameters parameters, HttpServletResponse resp) throws IOException {
+    private void processQuery(QueryParameters parameters, SerializationFormat format, HttpServletResponse resp) throws IOException {
         if (schema == null) {
             List<GraphQLApplication> applications = new ArrayList<>();
             ServiceLoader.load(GraphQLApplication.class).forEach(applications::add);
@@ -108,8 +225,24 @@ public class GraphQLServlet extends HttpServlet {
             } catch (Exception e) {
                 LOG.severe(e.getMessage());
             }
+            if (queryExecutionStrategy == null) {
+                if (!executionStrategyCreated) {
+                    // the schema is built again after a failure, the strategy (and its executor) is created once
+                    executionStrategy = createExecutionStrategy();
+                    executionStrategyCreated = true;
+                }
+                queryExecutionStrategy = executionStrategy;
+            } else if (executionMode != ExecutionMode.DEFAULT || streaming) {
+                LOG.warning("The application provides its own query execution strategy, execution mode " +
+                        executionMode + (streaming ? " and streaming are" : " is") + " not used.");
+            }
             schema = buildSchema();
         }
+        if (schema == null) {
+            // the cause has been logged while building the schema, it is built again with the next request
+            resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "GraphQL schema is not available.");
+            return;
+        }
 
         if (graphQL == null) {
             GraphQL.Builder builder = GraphQL
@@ -133,19 +266,66 @@ public class GraphQLServlet extends HttpServlet {
             graphQL = builder.build();
         }
 
+        List<String> exportPath = null;
+        if (format.isLineDelimited()) {
+            try {
+                exportPath = getExportPath(parameters);
+            } catch (GraphQLException e) {
+                resp.sendError(HttpServletResponse.SC_NOT_ACCEPTABLE, e.getMessage());
+                return;
+            }
+        }
+
         ExecutionInput.Builder executionInput = ExecutionInput.newExecutionInput()
                 .query(parameters.getQuery())
                 .operationName(parameters.getOperationName())
                 .variables(parameters.getVariables())
-                .context(contexts);
+                .context(contexts)
+                .dataLoaderRegistry(new DataLoaderRegistry());
 
-        ExecutionResult executionResult = graphQL.execute(executionInput.build());
-        returnAsJson(resp, executionResult);
+        ExecutionResult executionResult;
+        try {
+            executionResult = graphQL.execute(executionInput.build());
+        } catch (RuntimeException e) {
+            RejectedExecutionException rejected = getRejection(e);
+            if (rejected == null) {
+                throw e;
+            }
+            LOG.warning("Request rejected: " + rejected.getMessage());
+            resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        for (GraphQLError error : executionResult.getErrors()) {
+            if (error instanceof ExceptionWhileDataFetching) {
+                RejectedExecutionException rejected = getRejection(((ExceptionWhileDataFetching) error).getException());
+                if (rejected != null) {
+                    LOG.warning("Request rejected: " + rejected.getMessage());
+                    resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    return;
+                }
+            }
+        }
+        returnResult(resp, executionResult, format, exportPath);
         if (perRequest) {
             graphQL = null;
         }
     }
 
+    /**
+     * Returns the RejectedExecutionException in the cause chain (e.g. wrapped in a CompletionException by
+     * asynchronous field resolution) or null, if the failure was not caused by a saturated executor.
+     */
+    private static RejectedExecutionException getRejection(Throwable throwable) {
+        Set<Throwable> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        while (throwable != null && visited.add(throwable)) {
+            if (throwable instanceof RejectedExecutionException) {
+                return (RejectedExecutionException) throwable;
+            }
+            throwable = throwable.getCause();
+        }
+        return null;
+    }
+
     private GraphQLSchema buildSchema() {
         final List<String> basePackages = new ArrayList<>(
                 Collections.singletonList("com.kumuluz.ee.graphql.classes")
@@ -173,31 +353,130 @@ public class GraphQLServlet extends HttpServlet {
 
             generator.withBasePackages(basePackages.toArray(new String [0]));
 
+            boolean generatedFetchers = configurationUtil
+                    .getBoolean("kumuluzee.graphql.schema.generated-fetchers").orElse(false);
+            GeneratedDataFetchers.ValueMapperCapture valueMapperCapture = null;
+            if (generatedFetchers) {
+                valueMapperCapture = new GeneratedDataFetchers.ValueMapperCapture();
+                generator.withValueMapperFactory(valueMapperCapture);
+            }
+
+            Map<Class<?>, Object> instances = new LinkedHashMap<>();
+
             for (Class<?> c : classes) {
+                Object instance;
                 if (CDIfound) {
                     //we have CDI, perform injections
                     try {
-                        generator.withOperationsFromSingleton(CDI.current().select(c).get(), c);
+                        instance = CDI.current().select(c).get();
                     } catch (Exception e) {
-                        generator.withOperationsFromSingleton(c.getDeclaredConstructor().newInstance(), c);
+                        instance = c.getDeclaredConstructor().newInstance();
                     }
                 } else {
                     //no CDI, use newInstance()
-                    generator.withOperationsFromSingleton(c.getDeclaredConstructor().newInstance(), c);
+                    instance = c.getDeclaredConstructor().newInstance();
                 }
+
+                instances.put(c, instance);
+
+                generator.withOperationsFromSingleton(instance, c);
             }
 
-            return generator.generate();
+            GraphQLSchema graphQLSchema = generator.generate();
+
+            if (generatedFetchers && valueMapperCapture.getValueMapper() != null) {
+                for (Map.Entry<Class<?>, Object> entry : instances.entrySet()) {
+                    GeneratedDataFetchers<?> dataFetchers = GeneratedDataFetchers.find(entry.getKey());
+                    if (dataFetchers != null) {
+                        graphQLSchema = dataFetchers.apply(graphQLSchema, entry.getValue(),
+                                valueMapperCapture.getValueMapper());
+                    }
+                }
+            }
+
+            return graphQLSchema;
         } catch (Exception e) {
             LOG.severe(e.getMessage());
         }
         return null;
     }
 
-    private void returnAsJson(HttpServletResponse response, ExecutionResult executionResult) throws IOException {
-        response.setContentType("application/json");
+    /**
+     * Returns the path of the exported list in the result data. Only queries selecting a single root field, which
+     * returns a list or a PaginationWrapper, can be exported.
+     */
+    private List<String> getExportPath(QueryParameters parameters) {
+        Document document;
+        try {
+            document = new Parser().parseDocument(parameters.getQuery());
+        } catch (InvalidSyntaxException e) {
+            // reported by the execution
+            return null;
+        }
+
+        OperationDefinition operation = null;
+        for (Definition<?> definition : document.getDefinitions()) {
+            if (definition instanceof OperationDefinition && (parameters.getOperationName() == null ||
+                    parameters.getOperationName().equals(((OperationDefinition) definition).getName()))) {
+                operation = (OperationDefinition) definition;
+                break;
+            }
+        }
+        if (operation == null) {
+            return null;
+        }
+        if (operation.getOperation() != OperationDefinition.Operation.QUERY) {
+            throw new GraphQLException("Only queries can be exported as " + SerializationFormat.NDJSON.getMediaType() + ".");
+        }
+
+        List<Selection> selections = operation.getSelectionSet().getSelections();
+        if (selections.size() != 1 || !(selections.get(0) instanceof Field)) {
+            throw new GraphQLException("Exported query must select a single root field.");
+        }
+        Field field = (Field) selections.get(0);
+        if (schema == null || schema.getQueryType() == null) {
+            return null;
+        }
+        GraphQLFieldDefinition fieldDefinition = schema.getQueryType().getFieldDefinition(field.getName());
+        if (fieldDefinition == null) {
+            return null;
+        }
+
+        GraphQLType type = unwrapNonNull(fieldDefinition.getType());
+        if (type instanceof GraphQLList) {
+            return Collections.singletonList(field.getResultKey());
+        }
+        if (type instanceof GraphQLObjectType && field.getSelectionSet() != null) {
+            GraphQLFieldDefinition resultDefinition = ((GraphQLObjectType) type).getFieldDefinition("result");
+            if (resultDefinition != null && unwrapNonNull(resultDefinition.getType()) instanceof GraphQLList) {
+                for (Selection<?> selection : field.getSelectionSet().getSelections()) {
+                    if (selection instanceof Field && "result".equals(((Field) selection).getName())) {
+                        return Arrays.asList(field.getResultKey(), ((Field) selection).getResultKey());
+                    }
+                }
+            }
+        }
+        throw new GraphQLException("Exported field " + field.getName() + " must return a list or select result.");
+    }
+
+    private static GraphQLType unwrapNonNull(GraphQLType type) {
+        while (type instanceof GraphQLNonNull) {
+            type = ((GraphQLNonNull) type).getWrappedType();
+        }
+        return type;
+    }
+
+    private void returnResult(HttpServletResponse response, ExecutionResult executionResult, SerializationFormat format,
+                              List<String> exportPath) throws IOException {
+        response.setContentType(format.getMediaType());
         response.setStatus(HttpServletResponse.SC_OK);
-        new ObjectMapper().writer().writeValue(response.getWriter(), executionResult.toSpecification());
+        try (JsonGenerator generator = format.getObjectMapper().getFactory().createGenerator(response.getOutputStream())) {
+            if (format.isLineDelimited()) {
+                ExecutionResultWriter.writeLines(generator, executionResult, exportPath);
+            } else {
+                ExecutionResultWriter.write(generator, executionResult);
+            }
+        }
     }
 
     private List<Class<?>> getResourceClasses() {
@@ -0,0 +1,208 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import com.kumuluz.ee.configuration.utils.ConfigurationUtil;
+import com.kumuluz.ee.graphql.classes.BulkItemResult;
+import com.kumuluz.ee.graphql.classes.BulkResult;
+import graphql.GraphQLException;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.persistence.*;
+import javax.transaction.TransactionSynchronizationRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * BulkProcessor class - applies a mutation to a list of inputs in a single transaction
+ *
+ * Inputs are validated before the entity manager is used. Invalid inputs are reported and skipped, the operation is
+ * applied to the other inputs. An operation may have changed entities before it failed, so any failing operation rolls
+ * back the whole bulk.
+ *
+ * The entity manager is flushed every batch-size items, so the provider can send the statements of a batch together
+ * (with JDBC batch writing enabled). If the bulk runs in its own resource-local transaction, the entity manager is also
+ * cleared, so the persistence context does not grow with the number of items, and entities returned by the operation
+ * for earlier batches are detached. Entity managers of a caller's transaction are never cleared, because that would
+ * detach the caller's entities as well.
+ *
+ * On failure, a transaction of the caller is marked for rollback. A JTA transaction is marked through the
+ * transaction synchronization registry, and if the registry is not available, the failure is rethrown.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+final class BulkProcessor {
+
+    private static final Logger LOG = Logger.getLogger(BulkProcessor.class.getName());
+
+    private static final String REGISTRY_NAME = "java:comp/TransactionSynchronizationRegistry";
+
+    private BulkProcessor() {
+    }
+
+    /**
+     * @param validator throws, if the input is invalid, null if inputs are not validated
+     */
+    static <I, T> BulkResult<T> process(EntityManager em, List<I> inputs, Consumer<? super I> validator,
+                                        Function<? super I, ? extends T> operation) {
+        ConfigurationUtil configurationUtil = ConfigurationUtil.getInstance();
+        int maxItems = configurationUtil.getInteger("kumuluzee.graphql.bulk.max-items").orElse(10000);
+        if (inputs.size() > maxItems) {
+            throw new GraphQLException("Bulk mutation accepts at most " + maxItems + " items.");
+        }
+        int batchSize = Math.max(1, configurationUtil.getInteger("kumuluzee.graphql.bulk.batch-size").orElse(50));
+
+        String[] errors = new String[inputs.size()];
+        if (validator != null) {
+            for (int i = 0; i < inputs.size(); i++) {
+                try {
+                    validator.accept(inputs.get(i));
+                } catch (RuntimeException e) {
+                    errors[i] = getMessage(e);
+                }
+            }
+        }
+
+        EntityTransaction transaction = getResourceLocalTransaction(em);
+        boolean owner = false;
+        if (transaction == null) {
+            joinTransaction(em);
+        } else if (!transaction.isActive()) {
+            transaction.begin();
+            owner = true;
+        }
+
+        List<T> results = new ArrayList<>(inputs.size());
+        int executed = 0;
+        RuntimeException failure = null;
+        try {
+            for (int i = 0; i < inputs.size(); i++) {
+                if (errors[i] != null) {
+                    results.add(null);
+                    continue;
+                }
+                executed = i + 1;
+                try {
+                    results.add(operation.apply(inputs.get(i)));
+                } catch (RuntimeException e) {
+                    errors[i] = getMessage(e);
+                    throw e;
+                }
+                if (results.size() % batchSize == 0) {
+                    em.flush();
+                    if (owner) {
+                        em.clear();
+                    }
+                }
+            }
+            em.flush();
+            if (owner) {
+                transaction.commit();
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+            LOG.warning("Bulk mutation of " + inputs.size() + " items rolled back: " + getMessage(e));
+            rollback(transaction, owner, e);
+        }
+
+        List<BulkItemResult<T>> items = new ArrayList<>(inputs.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            if (errors[i] != null) {
+                items.add(new BulkItemResult<>(i, null, errors[i]));
+            } else if (failure == null) {
+                items.add(new BulkItemResult<>(i, results.get(i), null));
+            } else if (i < executed) {
+                items.add(new BulkItemResult<>(i, null, "Rolled back: " + getMessage(failure)));
+            } else {
+                items.add(new BulkItemResult<>(i, null, "Not executed: bulk mutation was rolled back."));
+            }
+        }
+        return new BulkResult<>(items, failure != null);
+    }
+
+    private static EntityTransaction getResourceLocalTransaction(EntityManager em) {
+        try {
+            return em.getTransaction();
+        } catch (IllegalStateException e) {
+            // JTA entity manager
+            return null;
+        }
+    }
+
+    private static void joinTransaction(EntityManager em) {
+        if (em.isJoinedToTransaction()) {
+            return;
+        }
+        try {
+            em.joinTransaction();
+        } catch (TransactionRequiredException e) {
+            throw new GraphQLException("Bulk mutations with a JTA entity manager must run in an active transaction.");
+        }
+    }
+
+    private static void rollback(EntityTransaction transaction, boolean owner, RuntimeException failure) {
+        if (transaction == null) {
+            // only exceptions of the provider mark a JTA transaction for rollback, those of the operation do not
+            TransactionSynchronizationRegistry registry = Registry.INSTANCE;
+            if (registry == null) {
+                throw failure;
+            }
+            try {
+                registry.setRollbackOnly();
+            } catch (IllegalStateException e) {
+                throw failure;
+            }
+            return;
+        }
+        if (!transaction.isActive()) {
+            return;
+        }
+        if (owner) {
+            transaction.rollback();
+        } else {
+            transaction.setRollbackOnly();
+        }
+    }
+
+    private static String getMessage(Throwable e) {
+        return (e.getMessage() != null) ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    private static class Registry {
+
+        private static final TransactionSynchronizationRegistry INSTANCE = lookup();
+
+        private static TransactionSynchronizationRegistry lookup() {
+            try {
+                return (TransactionSynchronizationRegistry) new InitialContext().lookup(REGISTRY_NAME);
+            } catch (NamingException | RuntimeException e) {
+                LOG.fine("Transaction synchronization registry is not available, failed bulk mutations with a JTA " +
+                        "entity manager are rethrown.");
+                return null;
+            }
+        }
+    }
+}
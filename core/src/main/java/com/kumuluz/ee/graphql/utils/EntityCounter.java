@@ -0,0 +1,109 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import com.kumuluz.ee.configuration.utils.ConfigurationUtil;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * EntityCounter class - computes totals of JPA queries according to the {@link CountMode}
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+final class EntityCounter {
+
+    private static volatile List<CountEstimator> estimators;
+
+    private final Integer total;
+    private final boolean capped;
+    private final boolean estimated;
+
+    private EntityCounter(Integer total, boolean capped, boolean estimated) {
+        this.total = total;
+        this.capped = capped;
+        this.estimated = estimated;
+    }
+
+    Integer getTotal() {
+        return total;
+    }
+
+    boolean isCapped() {
+        return capped;
+    }
+
+    boolean isEstimated() {
+        return estimated;
+    }
+
+    static CountMode getDefaultCountMode() {
+        return CountMode.fromConfig(ConfigurationUtil.getInstance()
+                .get("kumuluzee.graphql.pagination.count-mode").orElse(null));
+    }
+
+    /**
+     * Counts entities matching the query. Offset, limit, order and fields of the query parameters are ignored.
+     */
+    static <T> EntityCounter count(EntityManager em, JpaQuery<T> query, CountMode mode) {
+        Class<T> tClass = query.getEntityClass();
+        if (mode == null) {
+            mode = getDefaultCountMode();
+        }
+
+        if (mode == CountMode.ESTIMATE) {
+            for (CountEstimator estimator : getEstimators()) {
+                Long estimate = estimator.estimate(em, tClass, query.getFullQueryParameters());
+                if (estimate != null) {
+                    return new EntityCounter(toInt(estimate), false, true);
+                }
+            }
+            mode = CountMode.CAPPED;
+        }
+
+        if (mode == CountMode.CAPPED) {
+            int cap = ConfigurationUtil.getInstance().getInteger("kumuluzee.graphql.pagination.count-cap").orElse(1000);
+            List<String> idField = Collections.singletonList(KeysetPagination.getIdAttribute(em, tClass));
+            int rows = query.firstRows(cap + 1, idField).getResultList(em).size();
+            return (rows > cap) ? new EntityCounter(cap, true, false) : new EntityCounter(rows, false, false);
+        }
+
+        return new EntityCounter(toInt(query.count(em)), false, false);
+    }
+
+    private static int toInt(long value) {
+        return (int) Math.min(value, Integer.MAX_VALUE);
+    }
+
+    private static List<CountEstimator> getEstimators() {
+        if (estimators == null) {
+            List<CountEstimator> loaded = new ArrayList<>();
+            ServiceLoader.load(CountEstimator.class).forEach(loaded::add);
+            estimators = loaded;
+        }
+        return estimators;
+    }
+}
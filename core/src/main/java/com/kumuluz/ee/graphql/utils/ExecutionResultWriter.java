@@ -0,0 +1,202 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.kumuluz.ee.graphql.execution.StreamedList;
+import graphql.ExecutionResult;
+import graphql.GraphQLError;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * ExecutionResultWriter class - writes ExecutionResult directly to a streaming generator
+ *
+ * Produces the same document as {@link ExecutionResult#toSpecification()} without building an intermediate map of the
+ * whole result. Large lists are flushed to the underlying stream while they are being written. The errors member is
+ * written after the data, so that it includes errors of {@link StreamedList} elements, which are only completed while
+ * the data is written. Streamed lists are closed once written, also if writing fails.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class ExecutionResultWriter {
+
+    private static final int FLUSH_INTERVAL = 1000;
+
+    private ExecutionResultWriter() {
+    }
+
+    public static void write(JsonGenerator generator, ExecutionResult executionResult) throws IOException {
+        generator.writeStartObject();
+
+        List<StreamedList> streamedLists = new ArrayList<>();
+        if (executionResult.isDataPresent()) {
+            generator.writeFieldName("data");
+            writeValue(generator, executionResult.getData(), streamedLists);
+        }
+
+        List<GraphQLError> errors = getErrors(executionResult, streamedLists);
+        if (!errors.isEmpty()) {
+            generator.writeFieldName("errors");
+            generator.writeStartArray();
+            for (GraphQLError error : errors) {
+                writeValue(generator, error.toSpecification());
+            }
+            generator.writeEndArray();
+        }
+
+        Map<Object, Object> extensions = executionResult.getExtensions();
+        if (extensions != null) {
+            generator.writeFieldName("extensions");
+            writeValue(generator, extensions);
+        }
+
+        generator.writeEndObject();
+        generator.flush();
+    }
+
+    /**
+     * Writes elements of the list at the given path of the result data as separate JSON documents, one per line. If
+     * there are any errors, they are written as the last line.
+     */
+    public static void writeLines(JsonGenerator generator, ExecutionResult executionResult, List<String> path) throws IOException {
+        generator.setRootValueSeparator(null);
+
+        Object value = executionResult.isDataPresent() ? executionResult.getData() : null;
+        for (int i = 0; path != null && i < path.size() && value instanceof Map; i++) {
+            value = ((Map<?, ?>) value).get(path.get(i));
+        }
+        List<StreamedList> streamedLists = new ArrayList<>();
+        if (value instanceof Iterable) {
+            try {
+                int count = 0;
+                for (Object item : (Iterable<?>) value) {
+                    writeValue(generator, item, streamedLists);
+                    generator.writeRaw('\n');
+                    if (++count % FLUSH_INTERVAL == 0) {
+                        generator.flush();
+                    }
+                }
+            } finally {
+                closeStreamedList(value, streamedLists);
+            }
+        }
+
+        List<GraphQLError> errors = getErrors(executionResult, streamedLists);
+        if (!errors.isEmpty()) {
+            generator.writeStartObject();
+            generator.writeFieldName("errors");
+            generator.writeStartArray();
+            for (GraphQLError error : errors) {
+                writeValue(generator, error.toSpecification());
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+        generator.flush();
+    }
+
+    /**
+     * Returns errors of the execution followed by errors of the written streamed lists.
+     */
+    private static List<GraphQLError> getErrors(ExecutionResult executionResult, List<StreamedList> streamedLists) {
+        Set<GraphQLError> errors = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<GraphQLError> result = new ArrayList<>();
+        if (executionResult.getErrors() != null) {
+            for (GraphQLError error : executionResult.getErrors()) {
+                if (errors.add(error)) {
+                    result.add(error);
+                }
+            }
+        }
+        for (StreamedList streamedList : streamedLists) {
+            for (GraphQLError error : streamedList.getErrors()) {
+                if (errors.add(error)) {
+                    result.add(error);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void closeStreamedList(Object value, List<StreamedList> streamedLists) {
+        if (value instanceof StreamedList) {
+            ((StreamedList) value).close();
+            streamedLists.add((StreamedList) value);
+        }
+    }
+
+    public static void writeValue(JsonGenerator generator, Object value) throws IOException {
+        List<StreamedList> streamedLists = new ArrayList<>();
+        writeValue(generator, value, streamedLists);
+    }
+
+    private static void writeValue(JsonGenerator generator, Object value, List<StreamedList> streamedLists) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Map) {
+            generator.writeStartObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                generator.writeFieldName(String.valueOf(entry.getKey()));
+                writeValue(generator, entry.getValue(), streamedLists);
+            }
+            generator.writeEndObject();
+        } else if (value instanceof Iterable) {
+            generator.writeStartArray();
+            try {
+                int count = 0;
+                for (Object item : (Iterable<?>) value) {
+                    writeValue(generator, item, streamedLists);
+                    if (++count % FLUSH_INTERVAL == 0) {
+                        generator.flush();
+                    }
+                }
+            } finally {
+                closeStreamedList(value, streamedLists);
+            }
+            generator.writeEndArray();
+        } else if (value instanceof Integer) {
+            generator.writeNumber((Integer) value);
+        } else if (value instanceof Long) {
+            generator.writeNumber((Long) value);
+        } else if (value instanceof Double) {
+            generator.writeNumber((Double) value);
+        } else if (value instanceof Float) {
+            generator.writeNumber((Float) value);
+        } else if (value instanceof BigDecimal) {
+            generator.writeNumber((BigDecimal) value);
+        } else if (value instanceof BigInteger) {
+            generator.writeNumber((BigInteger) value);
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else {
+            // custom scalars and anything else not produced by the default coercings
+            generator.writeObject(value);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import graphql.GraphQLException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * FieldValues class - conversion and comparison of field values used by in-memory sorting and filtering
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class FieldValues {
+
+    private FieldValues() {
+    }
+
+    /**
+     * Converts the filter value to the given field type.
+     *
+     * @return converted value or null, if the type is not supported and values should be compared as strings
+     * @throws GraphQLException if the value cannot be converted to the field type
+     */
+    public static Object convert(Object value, Class<?> type) {
+        if (value == null || type.isInstance(value)) {
+            return value;
+        }
+        if (value instanceof Date) {
+            return convertDate((Date) value, type);
+        }
+
+        String s = value.toString().trim();
+        try {
+            if (type == String.class) {
+                return value.toString();
+            } else if (type == Integer.class) {
+                return Integer.valueOf(s);
+            } else if (type == Long.class) {
+                return Long.valueOf(s);
+            } else if (type == Double.class) {
+                return Double.valueOf(s);
+            } else if (type == Float.class) {
+                return Float.valueOf(s);
+            } else if (type == Short.class) {
+                return Short.valueOf(s);
+            } else if (type == Byte.class) {
+                return Byte.valueOf(s);
+            } else if (type == BigDecimal.class) {
+                return new BigDecimal(s);
+            } else if (type == BigInteger.class) {
+                return new BigInteger(s);
+            } else if (type == Boolean.class) {
+                return Boolean.valueOf(s);
+            } else if (type == UUID.class) {
+                return UUID.fromString(s);
+            } else if (type.isEnum()) {
+                return toEnum(type, s);
+            } else if (Date.class.isAssignableFrom(type) || type == Instant.class || type == LocalDate.class ||
+                    type == LocalDateTime.class || type == ZonedDateTime.class || type == OffsetDateTime.class) {
+                return convertDate(parseDate(s), type);
+            }
+        } catch (IllegalArgumentException | DateTimeException e) {
+            throw new GraphQLException("Unable to convert filter value " + value + " to " + type.getSimpleName() + ".");
+        }
+        return null;
+    }
+
+    /**
+     * Returns true, if filter values can be converted to the given type with {@link #convert(Object, Class)}.
+     */
+    public static boolean isSupported(Class<?> type) {
+        type = wrap(type);
+        return type == String.class || type == Integer.class || type == Long.class || type == Double.class ||
+                type == Float.class || type == Short.class || type == Byte.class || type == BigDecimal.class ||
+                type == BigInteger.class || type == Boolean.class || type == UUID.class || type.isEnum() ||
+                isTemporal(type);
+    }
+
+    /**
+     * Returns true, if date filter values can be converted to the given type with {@link #convert(Object, Class)}.
+     */
+    public static boolean isTemporal(Class<?> type) {
+        return type == Date.class || type == java.sql.Date.class || type == java.sql.Timestamp.class ||
+                type == Instant.class || type == LocalDate.class || type == LocalDateTime.class ||
+                type == ZonedDateTime.class || type == OffsetDateTime.class;
+    }
+
+    /**
+     * Returns the wrapper class of a primitive type or the type itself, if it is not primitive.
+     */
+    public static Class<?> wrap(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        } else if (type == int.class) {
+            return Integer.class;
+        } else if (type == long.class) {
+            return Long.class;
+        } else if (type == double.class) {
+            return Double.class;
+        } else if (type == float.class) {
+            return Float.class;
+        } else if (type == boolean.class) {
+            return Boolean.class;
+        } else if (type == short.class) {
+            return Short.class;
+        } else if (type == byte.class) {
+            return Byte.class;
+        } else if (type == char.class) {
+            return Character.class;
+        }
+        return Void.class;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object toEnum(Class<?> type, String value) {
+        return Enum.valueOf((Class<? extends Enum>) type, value);
+    }
+
+    public static Date parseDate(String value) {
+        TemporalAccessor accessor;
+        try {
+            accessor = DateTimeFormatter.ISO_DATE_TIME.parse(value);
+        } catch (DateTimeParseException e) {
+            accessor = LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault());
+        }
+        return Date.from(Instant.from(accessor));
+    }
+
+    private static Object convertDate(Date date, Class<?> type) {
+        if (type.isInstance(date)) {
+            return date;
+        }
+        Instant instant = date.toInstant();
+        if (type == Instant.class) {
+            return instant;
+        } else if (type == LocalDate.class) {
+            return instant.atZone(ZoneId.systemDefault()).toLocalDate();
+        } else if (type == LocalDateTime.class) {
+            return instant.atZone(ZoneId.systemDefault()).toLocalDateTime();
+        } else if (type == ZonedDateTime.class) {
+            return instant.atZone(ZoneId.systemDefault());
+        } else if (type == OffsetDateTime.class) {
+            return instant.atZone(ZoneId.systemDefault()).toOffsetDateTime();
+        } else if (type == java.sql.Date.class) {
+            return new java.sql.Date(date.getTime());
+        } else if (type == java.sql.Timestamp.class) {
+            return new java.sql.Timestamp(date.getTime());
+        } else if (type == Long.class) {
+            return date.getTime();
+        }
+        return null;
+    }
+
+    /**
+     * Compares two non-null values natively, if they are comparable with each other, or as strings otherwise.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static int compare(Object a, Object b) {
+        if (a instanceof Comparable && a.getClass().isInstance(b)) {
+            return ((Comparable) a).compareTo(b);
+        }
+        return a.toString().compareTo(b.toString());
+    }
+}
@@ -22,21 +22,30 @@ package com.kumuluz.ee.graphql.utils;
 
 import com.kumuluz.ee.configuration.utils.ConfigurationUtil;
 import com.kumuluz.ee.graphql.classes.*;
+import com.kumuluz.ee.graphql.execution.ManagedExecutor;
 import com.kumuluz.ee.rest.beans.QueryFilter;
 import com.kumuluz.ee.rest.beans.QueryOrder;
 import com.kumuluz.ee.rest.beans.QueryParameters;
 import com.kumuluz.ee.rest.enums.FilterOperation;
-import com.kumuluz.ee.rest.utils.JPAUtils;
 import com.kumuluz.ee.rest.utils.StreamUtils;
 import graphql.GraphQLException;
-import graphql.schema.DataFetchingEnvironment;
 import io.leangen.graphql.execution.ResolutionEnvironment;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.TemporalAccessor;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * GraphQLUtils class - helper class for pagination, sorting and filtering
@@ -82,9 +91,35 @@ public class GraphQLUtils<T> {
     @Deprecated
     public static <T> PaginationWrapper<T> process(List<T> l, Pagination p, Sort s, Filter f) {
 
-        QueryParameters queryParameters = queryParameters(p, s, f);
-        List<T> result = StreamUtils.queryEntities(l, queryParameters);
-        return wrapList(result, p, StreamUtils.queryEntitiesCount(l, queryParameters).intValue());
+        ListProcessor.Page<T> page = ListProcessor.process(l, s, f, getOffset(p), getLimit(p));
+        return wrapList(page.getItems(), p, page.getTotal());
+    }
+
+    public static <T> PaginationWrapper<T> process(IndexedCollection<T> collection, Pagination p, Sort s, Filter f) {
+        ListProcessor.Page<T> page = collection.query(s, f, getOffset(p), getLimit(p));
+        return wrapList(page.getItems(), p, page.getTotal());
+    }
+
+    public static <T> List<T> processWithoutPagination(IndexedCollection<T> collection, Sort s, Filter f) {
+        return collection.query(s, f, 0, null).getItems();
+    }
+
+    static int getOffset(Pagination p) {
+        if (p == null || p.getOffset() == null) {
+            return ConfigurationUtil.getInstance().getInteger("kumuluzee.graphql.defaults.offset").orElse(0);
+        }
+        return p.getOffset();
+    }
+
+    static int getLimit(Pagination p) {
+        if (p == null || p.getLimit() == null) {
+            return getDefaultLimit();
+        }
+        return p.getLimit();
+    }
+
+    static int getDefaultLimit() {
+        return ConfigurationUtil.getInstance().getInteger("kumuluzee.graphql.defaults.limit").orElse(20);
     }
 
     /**
@@ -92,8 +127,7 @@ public class GraphQLUtils<T> {
      */
     @Deprecated
     public static <T> List<T> processWithoutPagination(List<T> l, Sort s, Filter f) {
-        QueryParameters queryParameters = queryParameters(null, s, f, false);
-        return StreamUtils.queryEntities(l, queryParameters);
+        return ListProcessor.process(l, s, f, 0, null).getItems();
     }
 
     /**
@@ -112,7 +146,7 @@ public class GraphQLUtils<T> {
         return processWithoutPagination(l, s, null);
     }
 
-    private static List<String> getStringList(String stringArray, boolean ignoreCase) {
+    static List<String> getStringList(String stringArray, boolean ignoreCase) {
         if(stringArray.charAt(0) == '[' && stringArray.charAt(stringArray.length()-1) == ']') {
             stringArray = stringArray.substring(1, stringArray.length()-1);
         } else {
@@ -215,13 +249,141 @@ public class GraphQLUtils<T> {
     }
 
     public static <T> PaginationWrapper<T> process(EntityManager em, Class<T> tClass, ResolutionEnvironment resolutionEnvironment, Pagination pagination, Sort sort, Filter filter) {
-        QueryParameters queryParameters = queryParameters(pagination, sort, filter, true);
-        if(resolutionEnvironment != null) {
-            queryParameters.setFields(getFieldsFromResolutionEnvironment(resolutionEnvironment));
+        return process(em, tClass, resolutionEnvironment, pagination, sort, filter, null);
+    }
+
+    /**
+     * @param countMode how the total is computed, null for the configured default (kumuluzee.graphql.pagination.count-mode)
+     */
+    public static <T> PaginationWrapper<T> process(EntityManager em, Class<T> tClass, ResolutionEnvironment resolutionEnvironment, Pagination pagination, Sort sort, Filter filter, CountMode countMode) {
+        if(resolutionEnvironment != null && JpaResultCache.isEnabled(tClass)) {
+            return processCached(em, tClass, resolutionEnvironment, pagination, sort, filter, countMode);
+        }
+        JpaQuery<T> query = JpaQuery.of(tClass, pagination, sort, filter, true);
+        SelectionFetchPlan fetchPlan = applySelection(em, tClass, resolutionEnvironment, query);
+        List<T> studentList = query.getResultList(em);
+        if(fetchPlan != null) {
+            fetchPlan.load(em, tClass, studentList);
         }
-        List<T> studentList = JPAUtils.queryEntities(em, tClass, queryParameters);
-        Long size = JPAUtils.queryEntitiesCount(em, tClass, queryParameters);
-        return GraphQLUtils.wrapList(studentList, pagination, size.intValue());
+        if(!isSelected(resolutionEnvironment, "pagination/total")) {
+            return GraphQLUtils.wrapList(studentList, pagination);
+        }
+        EntityCounter counter = EntityCounter.count(em, query, countMode);
+        PaginationOutput paginationOutput = new PaginationOutput(pagination == null ? getDefaultPagination() : pagination,
+                counter.getTotal(), counter.isCapped(), counter.isEstimated());
+        return new PaginationWrapper<>(paginationOutput, studentList);
+    }
+
+    private static <T> PaginationWrapper<T> processCached(EntityManager em, Class<T> tClass, ResolutionEnvironment resolutionEnvironment, Pagination pagination, Sort sort, Filter filter, CountMode countMode) {
+        if(countMode == null) {
+            countMode = EntityCounter.getDefaultCountMode();
+        }
+        List<String> fields = getFieldsFromResolutionEnvironment(resolutionEnvironment);
+        List<Object> key = JpaResultCache.key(getOffset(pagination), getLimit(pagination), sort, filter, fields, countMode);
+        boolean counted = isSelected(resolutionEnvironment, "pagination/total");
+
+        JpaResultCache.Entry entry = JpaResultCache.get(tClass, key);
+        if(entry == null || (counted && !entry.isCounted())) {
+            Set<Class<?>> dependencies = JpaResultCache.dependencies(em, tClass, fields, sort, filter);
+            long generation = JpaResultCache.generation(dependencies);
+            JpaQuery<T> query = JpaQuery.of(tClass, pagination, sort, filter, true);
+            List<T> items;
+            boolean cacheable = true;
+            if(entry == null) {
+                SelectionFetchPlan fetchPlan = applySelection(em, tClass, fields, query);
+                items = query.getResultList(em);
+                if(fetchPlan != null) {
+                    fetchPlan.load(em, tClass, items);
+                }
+                // managed entities are bound to this entity manager and must not be shared with other requests
+                for(T item : items) {
+                    if(em.contains(item)) {
+                        cacheable = false;
+                        break;
+                    }
+                }
+            } else {
+                items = entry.getItems();
+            }
+            if(counted) {
+                EntityCounter counter = EntityCounter.count(em, query, countMode);
+                entry = new JpaResultCache.Entry(items, true, counter.getTotal(), counter.isCapped(), counter.isEstimated());
+            } else {
+                entry = new JpaResultCache.Entry(items, false, null, false, false);
+            }
+            if(cacheable) {
+                JpaResultCache.put(tClass, key, dependencies, generation, entry);
+            }
+        }
+
+        if(!counted) {
+            return GraphQLUtils.wrapList(entry.getItems(), pagination);
+        }
+        PaginationOutput paginationOutput = new PaginationOutput(pagination == null ? getDefaultPagination() : pagination,
+                entry.getTotal(), entry.isCapped(), entry.isEstimated());
+        return new PaginationWrapper<>(paginationOutput, entry.getItems());
+    }
+
+    public static <T> CompletableFuture<PaginationWrapper<T>> processAsync(EntityManagerFactory emf, Class<T> tClass, ResolutionEnvironment resolutionEnvironment, Pagination pagination, Sort sort, Filter filter) {
+        ManagedExecutor managedExecutor = ManagedExecutor.getInstance();
+        Executor executor = (managedExecutor == null) ? AsyncQueryPool.EXECUTOR : managedExecutor.getExecutorService();
+        return processAsync(emf, tClass, resolutionEnvironment, pagination, sort, filter, executor);
+    }
+
+    /**
+     * Runs the data and the count query concurrently on the given executor, each with its own EntityManager created
+     * from the factory. Returned entities are detached.
+     */
+    public static <T> CompletableFuture<PaginationWrapper<T>> processAsync(EntityManagerFactory emf, Class<T> tClass, ResolutionEnvironment resolutionEnvironment, Pagination pagination, Sort sort, Filter filter, Executor executor) {
+        List<String> fields = (resolutionEnvironment == null) ? null : getFieldsFromResolutionEnvironment(resolutionEnvironment);
+        Pagination outputPagination = (pagination == null) ? getDefaultPagination() : pagination;
+
+        CompletableFuture<List<T>> data = CompletableFuture.supplyAsync(() -> {
+            EntityManager em = emf.createEntityManager();
+            try {
+                JpaQuery<T> query = JpaQuery.of(tClass, pagination, sort, filter, true);
+                SelectionFetchPlan fetchPlan = (fields == null) ? null : applySelection(em, tClass, fields, query);
+                List<T> list = query.getResultList(em);
+                if(fetchPlan != null) {
+                    fetchPlan.load(em, tClass, list);
+                }
+                return list;
+            } finally {
+                em.close();
+            }
+        }, executor);
+
+        if(!isSelected(resolutionEnvironment, "pagination/total")) {
+            return data.thenApply(list -> new PaginationWrapper<>(new PaginationOutput(outputPagination, null), list));
+        }
+
+        CompletableFuture<EntityCounter> count = CompletableFuture.supplyAsync(() -> {
+            EntityManager em = emf.createEntityManager();
+            try {
+                return EntityCounter.count(em, JpaQuery.of(tClass, pagination, sort, filter, true), null);
+            } finally {
+                em.close();
+            }
+        }, executor);
+
+        return data.thenCombine(count, (list, counter) -> new PaginationWrapper<>(new PaginationOutput(outputPagination,
+                counter.getTotal(), counter.isCapped(), counter.isEstimated()), list));
+    }
+
+    public static <T> Connection<T> processConnection(EntityManager em, Class<T> tClass, CursorPagination pagination, Sort sort, Filter filter) {
+        return processConnection(em, tClass, null, pagination, sort, filter);
+    }
+
+    public static <T> Connection<T> processConnection(EntityManager em, Class<T> tClass, ResolutionEnvironment resolutionEnvironment, CursorPagination pagination, Sort sort) {
+        return processConnection(em, tClass, resolutionEnvironment, pagination, sort, null);
+    }
+
+    /**
+     * Returns a page of entities as a Relay connection, using cursor (keyset) pagination instead of offset. Entities
+     * are ordered by the sort fields followed by the entity id. Sort fields must not contain null values.
+     */
+    public static <T> Connection<T> processConnection(EntityManager em, Class<T> tClass, ResolutionEnvironment resolutionEnvironment, CursorPagination pagination, Sort sort, Filter filter) {
+        return KeysetPagination.process(em, tClass, resolutionEnvironment, pagination, sort, filter);
     }
 
     public static<T> List<T> processWithoutPagination(EntityManager em, Class<T> tClass) {
@@ -253,37 +415,119 @@ public class GraphQLUtils<T> {
     }
 
     public static<T> List<T> processWithoutPagination(EntityManager em, Class<T> tClass, ResolutionEnvironment resolutionEnvironment, Sort sort, Filter filter) {
-        QueryParameters queryParameters = queryParameters(null, sort, filter, false);
-        if(resolutionEnvironment != null) {
-            queryParameters.setFields(getFieldsFromResolutionEnvironment(resolutionEnvironment));
+        JpaQuery<T> query = JpaQuery.of(tClass, null, sort, filter, false);
+        SelectionFetchPlan fetchPlan = applySelection(em, tClass, resolutionEnvironment, query);
+        List<T> list = query.getResultList(em);
+        if(fetchPlan != null) {
+            fetchPlan.load(em, tClass, list);
         }
-        return JPAUtils.queryEntities(em, tClass, queryParameters);
+        return list;
     }
 
-    private static List<String> getFieldsFromResolutionEnvironment(ResolutionEnvironment resolutionEnvironment) {
-        List<String> fields = new ArrayList<>();
+    public static <T> ResultStream<T> processStream(EntityManager em, Class<T> tClass, Sort sort, Filter filter) {
+        return processStream(em, tClass, null, sort, filter);
+    }
+
+    /**
+     * Returns all entities matching the filter as a stream, which is read in batches while the response is written.
+     * The entity manager is cleared after every batch, so it must not hold pending changes.
+     */
+    public static <T> ResultStream<T> processStream(EntityManager em, Class<T> tClass, ResolutionEnvironment resolutionEnvironment, Sort sort, Filter filter) {
+        JpaQuery<T> query = JpaQuery.of(tClass, null, sort, filter, false);
+        SelectionFetchPlan fetchPlan = applySelection(em, tClass, resolutionEnvironment, query);
+        int fetchSize = ConfigurationUtil.getInstance().getInteger("kumuluzee.graphql.jpa.stream.fetch-size").orElse(1000);
+        return new ResultStream<>(() -> new JpaStreamIterator<>(em, query, fetchPlan, fetchSize),
+                () -> query.count(em).intValue());
+    }
 
-        DataFetchingEnvironment dataFetchingEnvironment = resolutionEnvironment.dataFetchingEnvironment;
-        Set<String> graphqlFields = dataFetchingEnvironment.getSelectionSet().get().keySet();
+    /**
+     * Applies the operation to all inputs in a single transaction and returns result or error of every input. If the
+     * operation fails for any input, the whole bulk is rolled back. The entity manager is flushed and cleared every
+     * kumuluzee.graphql.bulk.batch-size inputs, so the operation must not rely on entities loaded for previous inputs
+     * being managed and returned entities of previous batches are detached.
+     */
+    public static <I, T> BulkResult<T> processBulk(EntityManager em, List<I> inputs, Function<? super I, ? extends T> operation) {
+        return BulkProcessor.process(em, inputs, null, operation);
+    }
 
-        if(graphqlFields.contains("result")) {
-            for(String s: graphqlFields) {
-                String[] split = s.split("/", 2);
-                if(split[0].equals("result") && split.length >= 2) {
-                    fields.add(String.join(".", split[1].split("/")));
-                }
-            }
-        } else {
-            for(String s: graphqlFields) {
-                String[] split = s.split("/");
-                if(split.length >= 1) {
-                    fields.add(String.join(".", split));
-                }
+    /**
+     * Validates all inputs before the entity manager is used and applies the operation to valid inputs in a single
+     * transaction. Invalid inputs, for which the validator throws, are reported and skipped.
+     *
+     * @see #processBulk(EntityManager, List, Function)
+     */
+    public static <I, T> BulkResult<T> processBulk(EntityManager em, List<I> inputs, Consumer<? super I> validator, Function<? super I, ? extends T> operation) {
+        return BulkProcessor.process(em, inputs, validator, operation);
+    }
+
+    private static SelectionFetchPlan applySelection(EntityManager em, Class<?> tClass, ResolutionEnvironment resolutionEnvironment, JpaQuery<?> query) {
+        if(resolutionEnvironment == null) {
+            return null;
+        }
+        return applySelection(em, tClass, getFieldsFromResolutionEnvironment(resolutionEnvironment), query);
+    }
+
+    /**
+     * Selected associations are fetched for the whole result with a fetch plan, other selections are used for
+     * projection. Projected entities are not managed, so the projection is not used when associations are selected.
+     *
+     * @return fetch plan to be loaded after the query or null, if no associations are selected
+     */
+    private static SelectionFetchPlan applySelection(EntityManager em, Class<?> tClass, List<String> fields, JpaQuery<?> query) {
+        if(ConfigurationUtil.getInstance().getBoolean("kumuluzee.graphql.jpa.fetch-selected-associations").orElse(false)) {
+            SelectionFetchPlan fetchPlan = SelectionFetchPlan.of(em, tClass, fields);
+            if(!fetchPlan.isEmpty()) {
+                return fetchPlan;
             }
         }
+        query.setFields(fields);
+        return null;
+    }
 
-        fields.removeIf(f -> fields.stream().anyMatch(ff -> !ff.equals(f) && ff.startsWith(f)));
+    /**
+     * Returns true, if the field is selected or if the selection is unknown (no ResolutionEnvironment was provided).
+     */
+    static boolean isSelected(ResolutionEnvironment resolutionEnvironment, String field) {
+        return resolutionEnvironment == null || resolutionEnvironment.dataFetchingEnvironment.getSelectionSet().contains(field);
+    }
 
-        return fields;
+    private static List<String> getFieldsFromResolutionEnvironment(ResolutionEnvironment resolutionEnvironment) {
+        Set<String> graphqlFields = resolutionEnvironment.dataFetchingEnvironment.getSelectionSet().get().keySet();
+        return SelectionFields.get(resolutionEnvironment, graphqlFields.contains("result") ? "result" : null);
+    }
+
+    /**
+     * Returns selected fields nested under the given path (for example "edges/node").
+     */
+    static List<String> getFieldsFromResolutionEnvironment(ResolutionEnvironment resolutionEnvironment, String path) {
+        return SelectionFields.get(resolutionEnvironment, path);
+    }
+
+    /**
+     * Bounded pool for asynchronous queries, used when no executor is provided and the GraphQL executor is not
+     * running. Blocking JDBC calls must not run on the common fork-join pool. Created on first use, idle threads are
+     * released.
+     */
+    private static class AsyncQueryPool {
+
+        private static final ThreadPoolExecutor EXECUTOR;
+
+        static {
+            ConfigurationUtil configurationUtil = ConfigurationUtil.getInstance();
+            int threads = configurationUtil.getInteger("kumuluzee.graphql.jpa.async.threads")
+                    .orElse(Runtime.getRuntime().availableProcessors());
+            int queueLength = configurationUtil.getInteger("kumuluzee.graphql.jpa.async.queue-length").orElse(1000);
+
+            AtomicInteger threadCount = new AtomicInteger();
+            ThreadFactory threadFactory = r -> {
+                Thread thread = new Thread(r, "graphql-jpa-async-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            // full queue rejects new queries, which is reported as 503 Service Unavailable
+            EXECUTOR = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(queueLength), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+            EXECUTOR.allowCoreThreadTimeOut(true);
+        }
     }
-}
\ No newline at end of file
+}
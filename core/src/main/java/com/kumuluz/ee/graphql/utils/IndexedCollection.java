@@ -0,0 +1,631 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import com.kumuluz.ee.graphql.classes.Filter;
+import com.kumuluz.ee.graphql.classes.FilterField;
+import com.kumuluz.ee.graphql.classes.FilterType;
+import com.kumuluz.ee.graphql.classes.Sort;
+import com.kumuluz.ee.rest.enums.FilterOperation;
+import com.kumuluz.ee.rest.enums.OrderDirection;
+import graphql.GraphQLException;
+
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * IndexedCollection class - in-memory collection with secondary indexes, used for filtering without a full scan
+ *
+ * Hash indexes answer EQ, IN and INIC filters, sorted indexes answer EQ, IN, GT, GTE, LT and LTE filters (including
+ * DATE filters). Range filters matching more than a quarter of the elements are not answered by the index, since
+ * scanning the elements is cheaper than collecting them from the index. Filter fields without a matching index, sorting
+ * and pagination are processed by {@link ListProcessor} on the elements returned by the indexes, so results are the
+ * same as when processing a list. When sorting by a single field with a sorted index, elements are returned in index
+ * order and are not sorted again.
+ *
+ * Elements are indexed when they are added. If an element is modified in place, {@link #update(Object)} must be
+ * called in order to re-index it. The collection is safe for concurrent use.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class IndexedCollection<T> {
+
+    private final Class<T> type;
+    private final List<Index> indexes;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final TreeMap<Long, Entry<T>> elements = new TreeMap<>();
+    private final IdentityHashMap<T, Long> sequences = new IdentityHashMap<>();
+    private long nextSequence = 0;
+
+    private IndexedCollection(Class<T> type, List<Index> indexes) {
+        this.type = type;
+        this.indexes = indexes;
+    }
+
+    public static <T> Builder<T> builder(Class<T> type) {
+        return new Builder<>(type);
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Adds the element to the end of the collection. Adding an element, which is already present, has no effect.
+     */
+    public void add(T item) {
+        lock.writeLock().lock();
+        try {
+            addInternal(item);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addAll(Collection<? extends T> items) {
+        lock.writeLock().lock();
+        try {
+            for (T item : items) {
+                addInternal(item);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void addInternal(T item) {
+        Objects.requireNonNull(item, "Element must not be null.");
+        if (sequences.containsKey(item)) {
+            return;
+        }
+        long sequence = nextSequence++;
+        Entry<T> entry = new Entry<>(item, keys(item));
+        index(entry, sequence);
+        elements.put(sequence, entry);
+        sequences.put(item, sequence);
+    }
+
+    /**
+     * Removes the element (compared by identity) from the collection.
+     *
+     * @return true, if the element was present
+     */
+    public boolean remove(T item) {
+        lock.writeLock().lock();
+        try {
+            Long sequence = sequences.remove(item);
+            if (sequence == null) {
+                return false;
+            }
+            unindex(elements.remove(sequence), sequence);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-indexes the element after it has been modified in place. The position of the element is kept.
+     *
+     * @return true, if the element was present
+     */
+    public boolean update(T item) {
+        lock.writeLock().lock();
+        try {
+            Long sequence = sequences.get(item);
+            if (sequence == null) {
+                return false;
+            }
+            unindex(elements.get(sequence), sequence);
+            Entry<T> entry = new Entry<>(item, keys(item));
+            index(entry, sequence);
+            elements.put(sequence, entry);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            elements.clear();
+            sequences.clear();
+            for (Index index : indexes) {
+                index.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return elements.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a copy of all elements in insertion order.
+     */
+    public List<T> toList() {
+        lock.readLock().lock();
+        try {
+            return toListUnlocked();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Filters, sorts and pages the elements, using indexes for the filter fields they can answer.
+     *
+     * @param offset number of matching elements to skip
+     * @param limit  maximum number of returned elements, null for no limit
+     */
+    public ListProcessor.Page<T> query(Sort sort, Filter filter, int offset, Integer limit) {
+        Collection<T> candidates;
+        boolean ordered = false;
+        lock.readLock().lock();
+        try {
+            Set<Long> matches = matches(filter);
+            SortedIndex orderIndex = orderIndex(sort);
+            if (orderIndex != null && (matches == null || matches.size() * 4 >= elements.size())) {
+                // walking the index is cheaper than sorting the matching elements
+                candidates = orderIndex.ordered(matches, sort.getFields().get(0).getOrder() == OrderDirection.DESC,
+                        sequence -> elements.get(sequence).item);
+                ordered = true;
+            } else {
+                candidates = candidates(matches);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return ListProcessor.process(candidates, ordered ? null : sort, filter, offset, limit);
+    }
+
+    /**
+     * Returns the sorted index, which orders elements the same as the sort or null, if there is no such index.
+     */
+    private SortedIndex orderIndex(Sort sort) {
+        if (sort == null || sort.getFields() == null || sort.getFields().size() != 1) {
+            return null;
+        }
+        String field = sort.getFields().get(0).getField();
+        for (Index index : indexes) {
+            if (index instanceof SortedIndex && index.field.equals(field)) {
+                return (SortedIndex) index;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns sequences of elements which can match the filter or null, if no filter field can be answered by an
+     * index.
+     */
+    private Set<Long> matches(Filter filter) {
+        if (filter == null || filter.getFields() == null) {
+            return null;
+        }
+
+        List<Set<Long>> matches = new ArrayList<>();
+        for (FilterField field : filter.getFields()) {
+            for (Index index : indexes) {
+                Set<Long> match = index.lookup(field, elements.size());
+                if (match != null) {
+                    matches.add(match);
+                    break;
+                }
+            }
+        }
+        if (matches.isEmpty()) {
+            return null;
+        }
+        if (matches.size() == 1) {
+            return matches.get(0);
+        }
+
+        matches.sort(Comparator.comparingInt(Set::size));
+        Set<Long> found = new HashSet<>();
+        for (Long sequence : matches.get(0)) {
+            boolean inAll = true;
+            for (int i = 1; i < matches.size() && inAll; i++) {
+                inAll = matches.get(i).contains(sequence);
+            }
+            if (inAll) {
+                found.add(sequence);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns elements with the given sequences in insertion order or all elements, if sequences are null.
+     */
+    private Collection<T> candidates(Set<Long> matches) {
+        if (matches == null) {
+            return toListUnlocked();
+        }
+        long[] found = new long[matches.size()];
+        int count = 0;
+        for (Long sequence : matches) {
+            found[count++] = sequence;
+        }
+
+        Arrays.sort(found, 0, count);
+        List<T> candidates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            candidates.add(elements.get(found[i]).item);
+        }
+        return candidates;
+    }
+
+    private List<T> toListUnlocked() {
+        List<T> list = new ArrayList<>(elements.size());
+        for (Entry<T> entry : elements.values()) {
+            list.add(entry.item);
+        }
+        return list;
+    }
+
+    private Object[] keys(T item) {
+        Object[] keys = new Object[indexes.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = PropertyAccessor.of(item.getClass(), indexes.get(i).field).get(item);
+        }
+        return keys;
+    }
+
+    private void index(Entry<T> entry, long sequence) {
+        for (int i = 0; i < indexes.size(); i++) {
+            indexes.get(i).add(entry.keys[i], sequence);
+        }
+    }
+
+    private void unindex(Entry<T> entry, long sequence) {
+        for (int i = 0; i < indexes.size(); i++) {
+            indexes.get(i).remove(entry.keys[i], sequence);
+        }
+    }
+
+    private static class Entry<T> {
+        private final T item;
+        private final Object[] keys;
+
+        private Entry(T item, Object[] keys) {
+            this.item = item;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * Builder for {@link IndexedCollection}.
+     */
+    public static class Builder<T> {
+
+        private final Class<T> type;
+        private final List<Index> indexes = new ArrayList<>();
+
+        private Builder(Class<T> type) {
+            this.type = type;
+        }
+
+        /**
+         * Adds hash index on the given field, answering EQ, IN and INIC filters. The field type must be a String,
+         * a primitive wrapper, an enum or another final type.
+         */
+        public Builder<T> hashIndex(String field) {
+            Class<?> fieldType = fieldType(field);
+            if (!fieldType.isEnum() && !Modifier.isFinal(fieldType.getModifiers())) {
+                throw new IllegalArgumentException("Hash index on field " + field + " of type " +
+                        fieldType.getName() + " is not supported. Use sorted index instead.");
+            }
+            indexes.add(new HashIndex(field, fieldType));
+            return this;
+        }
+
+        /**
+         * Adds sorted index on the given field, answering EQ, IN, GT, GTE, LT and LTE filters. The field type must be
+         * comparable.
+         */
+        public Builder<T> sortedIndex(String field) {
+            Class<?> fieldType = fieldType(field);
+            if (!Comparable.class.isAssignableFrom(fieldType)) {
+                throw new IllegalArgumentException("Sorted index on field " + field + " of type " +
+                        fieldType.getName() + " is not supported. Field type must be comparable.");
+            }
+            indexes.add(new SortedIndex(field, fieldType));
+            return this;
+        }
+
+        private Class<?> fieldType(String field) {
+            Class<?> fieldType = PropertyAccessor.of(type, field).getType();
+            return FieldValues.wrap(fieldType);
+        }
+
+        public IndexedCollection<T> build() {
+            return new IndexedCollection<>(type, new ArrayList<>(indexes));
+        }
+    }
+
+    private abstract static class Index {
+
+        protected final String field;
+        protected final Class<?> fieldType;
+
+        Index(String field, Class<?> fieldType) {
+            this.field = field;
+            this.fieldType = fieldType;
+        }
+
+        abstract void add(Object key, long sequence);
+
+        abstract void remove(Object key, long sequence);
+
+        abstract void clear();
+
+        /**
+         * Returns sequences of elements matching the filter field or null, if the field cannot be answered by this
+         * index.
+         */
+        abstract Set<Long> lookup(FilterField filterField, int size);
+
+        protected Object literal(FilterField filterField, String value) {
+            Object literal = (filterField.getType() == FilterType.DATE) ? FieldValues.parseDate(value) : value;
+            return FieldValues.convert(literal, fieldType);
+        }
+
+        protected List<Object> literals(FilterField filterField) {
+            List<Object> literals = new ArrayList<>();
+            for (String value : GraphQLUtils.getStringList(filterField.getValue(), false)) {
+                Object literal = literal(filterField, value);
+                if (literal == null) {
+                    return null;
+                }
+                literals.add(literal);
+            }
+            return literals;
+        }
+
+        protected static void add(Map<Object, Set<Long>> map, Object key, long sequence) {
+            map.computeIfAbsent(key, k -> new HashSet<>()).add(sequence);
+        }
+
+        protected static void remove(Map<Object, Set<Long>> map, Object key, long sequence) {
+            Set<Long> sequences = map.get(key);
+            if (sequences != null) {
+                sequences.remove(sequence);
+                if (sequences.isEmpty()) {
+                    map.remove(key);
+                }
+            }
+        }
+
+        protected static Set<Long> union(Collection<Set<Long>> sets) {
+            Set<Long> union = new HashSet<>();
+            for (Set<Long> set : sets) {
+                union.addAll(set);
+            }
+            return union;
+        }
+    }
+
+    private static class HashIndex extends Index {
+
+        private final Map<Object, Set<Long>> values = new HashMap<>();
+        private final Map<Object, Set<Long>> lowerCaseValues = new HashMap<>();
+
+        HashIndex(String field, Class<?> fieldType) {
+            super(field, fieldType);
+        }
+
+        private static Object normalize(Object key) {
+            return (key instanceof BigDecimal) ? ((BigDecimal) key).stripTrailingZeros() : key;
+        }
+
+        @Override
+        void add(Object key, long sequence) {
+            if (key != null) {
+                add(values, normalize(key), sequence);
+                add(lowerCaseValues, key.toString().toLowerCase(), sequence);
+            }
+        }
+
+        @Override
+        void remove(Object key, long sequence) {
+            if (key != null) {
+                remove(values, normalize(key), sequence);
+                remove(lowerCaseValues, key.toString().toLowerCase(), sequence);
+            }
+        }
+
+        @Override
+        void clear() {
+            values.clear();
+            lowerCaseValues.clear();
+        }
+
+        @Override
+        Set<Long> lookup(FilterField filterField, int size) {
+            if (!field.equals(filterField.getField()) || filterField.getValue() == null) {
+                return null;
+            }
+            FilterOperation op = filterField.getOp();
+            if (op == FilterOperation.EQ) {
+                Object literal = literal(filterField, filterField.getValue());
+                return (literal == null) ? null :
+                        values.getOrDefault(normalize(literal), Collections.emptySet());
+            } else if (op == FilterOperation.IN) {
+                List<Object> literals = literals(filterField);
+                if (literals == null) {
+                    return null;
+                }
+                List<Set<Long>> sets = new ArrayList<>();
+                for (Object literal : literals) {
+                    sets.add(values.getOrDefault(normalize(literal), Collections.emptySet()));
+                }
+                return union(sets);
+            } else if (op == FilterOperation.INIC) {
+                List<Set<Long>> sets = new ArrayList<>();
+                for (String value : GraphQLUtils.getStringList(filterField.getValue(), true)) {
+                    sets.add(lowerCaseValues.getOrDefault(value, Collections.emptySet()));
+                }
+                return union(sets);
+            }
+            return null;
+        }
+    }
+
+    private static class SortedIndex extends Index {
+
+        /**
+         * Range lookups matching a larger share of all elements are left to the scan.
+         */
+        private static final double MAX_RANGE_SELECTIVITY = 0.25;
+
+        private final TreeMap<Object, Set<Long>> values = new TreeMap<>();
+        private final TreeSet<Long> nulls = new TreeSet<>();
+
+        SortedIndex(String field, Class<?> fieldType) {
+            super(field, fieldType);
+        }
+
+        @Override
+        void add(Object key, long sequence) {
+            if (key != null) {
+                add(values, key, sequence);
+            } else {
+                nulls.add(sequence);
+            }
+        }
+
+        @Override
+        void remove(Object key, long sequence) {
+            if (key != null) {
+                remove(values, key, sequence);
+            } else {
+                nulls.remove(sequence);
+            }
+        }
+
+        @Override
+        void clear() {
+            values.clear();
+            nulls.clear();
+        }
+
+        /**
+         * Returns elements in the order of the indexed field, with null values last (first when descending) and equal
+         * values in insertion order, the same as {@link QueryPlan} orders them.
+         *
+         * @param matches sequences of elements to return or null, for all elements
+         */
+        <T> List<T> ordered(Set<Long> matches, boolean descending, Function<Long, T> element) {
+            List<T> ordered = new ArrayList<>((matches != null) ? matches.size() : values.size() + nulls.size());
+            if (descending) {
+                addAll(ordered, nulls, matches, element);
+            }
+            for (Set<Long> sequences : descending ? values.descendingMap().values() : values.values()) {
+                addAll(ordered, (sequences.size() > 1) ? new TreeSet<>(sequences) : sequences, matches, element);
+            }
+            if (!descending) {
+                addAll(ordered, nulls, matches, element);
+            }
+            return ordered;
+        }
+
+        private static <T> void addAll(List<T> ordered, Set<Long> sequences, Set<Long> matches,
+                                       Function<Long, T> element) {
+            for (Long sequence : sequences) {
+                if (matches == null || matches.contains(sequence)) {
+                    ordered.add(element.apply(sequence));
+                }
+            }
+        }
+
+        /**
+         * Returns the union of the range or null, if the range contains more elements than the selectivity cutoff.
+         */
+        private static Set<Long> range(Collection<Set<Long>> range, int size) {
+            long cutoff = (long) (size * MAX_RANGE_SELECTIVITY);
+            long matched = 0;
+            for (Set<Long> sequences : range) {
+                matched += sequences.size();
+                if (matched > cutoff) {
+                    return null;
+                }
+            }
+            return union(range);
+        }
+
+        @Override
+        Set<Long> lookup(FilterField filterField, int size) {
+            if (!field.equals(filterField.getField()) || filterField.getValue() == null) {
+                return null;
+            }
+            FilterOperation op = filterField.getOp();
+            if (op == FilterOperation.IN) {
+                List<Object> literals = literals(filterField);
+                if (literals == null) {
+                    return null;
+                }
+                List<Set<Long>> sets = new ArrayList<>();
+                for (Object literal : literals) {
+                    sets.add(values.getOrDefault(literal, Collections.emptySet()));
+                }
+                return union(sets);
+            }
+
+            if (op != FilterOperation.EQ && op != FilterOperation.GT && op != FilterOperation.GTE &&
+                    op != FilterOperation.LT && op != FilterOperation.LTE) {
+                return null;
+            }
+            Object literal = literal(filterField, filterField.getValue());
+            if (literal == null) {
+                return null;
+            }
+            switch (op) {
+                case EQ:
+                    return values.getOrDefault(literal, Collections.emptySet());
+                case GT:
+                    return range(values.tailMap(literal, false).values(), size);
+                case GTE:
+                    return range(values.tailMap(literal, true).values(), size);
+                case LT:
+                    return range(values.headMap(literal, false).values(), size);
+                case LTE:
+                    return range(values.headMap(literal, true).values(), size);
+                default:
+                    throw new GraphQLException("Filter operation " + op + " is not supported.");
+            }
+        }
+    }
+}
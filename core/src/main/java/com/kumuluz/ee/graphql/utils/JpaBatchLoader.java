@@ -0,0 +1,158 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import com.kumuluz.ee.configuration.utils.ConfigurationUtil;
+import io.leangen.graphql.execution.ResolutionEnvironment;
+import org.dataloader.BatchLoader;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderRegistry;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Root;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * JpaBatchLoader class - batches loading of related entities across all parents resolved at the same level
+ *
+ * Keys requested by resolvers are collected in a data loader of the current request. When the level is dispatched,
+ * all entities are loaded with IN queries (split into chunks of kumuluzee.graphql.jpa.batch.chunk-size keys) and
+ * distributed back to the parents. Queries of the same entity manager are never run concurrently, since with
+ * {@link com.kumuluz.ee.graphql.execution.ExecutorExecutionStrategy} loaders are dispatched on pool threads.
+ *
+ * <pre>
+ * &#64;GraphQLQuery
+ * public CompletableFuture&lt;List&lt;Subject&gt;&gt; subjects(&#64;GraphQLContext Lecturer lecturer,
+ *                                                  &#64;GraphQLEnvironment ResolutionEnvironment env) {
+ *     return JpaBatchLoader.loadMany(env, em, Subject.class, "lecturer.id", lecturer.getId());
+ * }
+ * </pre>
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class JpaBatchLoader {
+
+    private static final String LOADER_PREFIX = "kumuluzee-jpa-batch:";
+
+    private JpaBatchLoader() {
+    }
+
+    /**
+     * Loads all entities of the given class, whose value at keyPath (for example "lecturer.id") equals key.
+     */
+    public static <C> CompletableFuture<List<C>> loadMany(ResolutionEnvironment resolutionEnvironment, EntityManager em,
+                                                          Class<C> entityClass, String keyPath, Object key) {
+        return loadMany(resolutionEnvironment.dataFetchingEnvironment.getDataLoaderRegistry(), em, entityClass, keyPath,
+                key);
+    }
+
+    static <C> CompletableFuture<List<C>> loadMany(DataLoaderRegistry registry, EntityManager em, Class<C> entityClass,
+                                                   String keyPath, Object key) {
+        DataLoader<Object, List<C>> dataLoader = getDataLoader(registry,
+                "many:" + entityClass.getName() + ":" + keyPath,
+                keys -> CompletableFuture.completedFuture(loadGrouped(em, entityClass, keyPath, keys)));
+        return dataLoader.load(key);
+    }
+
+    /**
+     * Loads the entity of the given class, whose value at keyPath (for example "id") equals key, or null if there is
+     * no such entity.
+     */
+    public static <C> CompletableFuture<C> loadOne(ResolutionEnvironment resolutionEnvironment, EntityManager em,
+                                                   Class<C> entityClass, String keyPath, Object key) {
+        return loadOne(resolutionEnvironment.dataFetchingEnvironment.getDataLoaderRegistry(), em, entityClass, keyPath,
+                key);
+    }
+
+    static <C> CompletableFuture<C> loadOne(DataLoaderRegistry registry, EntityManager em, Class<C> entityClass,
+                                            String keyPath, Object key) {
+        DataLoader<Object, C> dataLoader = getDataLoader(registry,
+                "one:" + entityClass.getName() + ":" + keyPath,
+                keys -> CompletableFuture.completedFuture(loadUnique(em, entityClass, keyPath, keys)));
+        return dataLoader.load(key);
+    }
+
+    private static <V> DataLoader<Object, V> getDataLoader(DataLoaderRegistry registry, String name,
+                                                           BatchLoader<Object, V> batchLoader) {
+        return registry.computeIfAbsent(LOADER_PREFIX + name, n -> DataLoader.newDataLoader(batchLoader));
+    }
+
+    static <C> List<List<C>> loadGrouped(EntityManager em, Class<C> entityClass, String keyPath, List<Object> keys) {
+        Map<Object, List<C>> grouped = new HashMap<>();
+        for (Object[] row : query(em, entityClass, keyPath, keys)) {
+            grouped.computeIfAbsent(row[0], k -> new ArrayList<>()).add(entityClass.cast(row[1]));
+        }
+        List<List<C>> result = new ArrayList<>(keys.size());
+        for (Object key : keys) {
+            result.add(grouped.getOrDefault(key, Collections.emptyList()));
+        }
+        return result;
+    }
+
+    static <C> List<C> loadUnique(EntityManager em, Class<C> entityClass, String keyPath, List<Object> keys) {
+        Map<Object, C> byKey = new HashMap<>();
+        for (Object[] row : query(em, entityClass, keyPath, keys)) {
+            byKey.putIfAbsent(row[0], entityClass.cast(row[1]));
+        }
+        List<C> result = new ArrayList<>(keys.size());
+        for (Object key : keys) {
+            result.add(byKey.get(key));
+        }
+        return result;
+    }
+
+    /**
+     * Returns pairs of key and entity for all entities with one of the given keys.
+     */
+    private static List<Object[]> query(EntityManager em, Class<?> entityClass, String keyPath, List<Object> keys) {
+        List<Object[]> rows = new ArrayList<>();
+        int chunkSize = getChunkSize();
+        List<Object> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+
+        // entity managers are not thread-safe and loaders of the same request may be dispatched on different threads
+        synchronized (em) {
+            for (int start = 0; start < distinct.size(); start += chunkSize) {
+                List<Object> chunk = distinct.subList(start, Math.min(start + chunkSize, distinct.size()));
+
+                CriteriaBuilder cb = em.getCriteriaBuilder();
+                CriteriaQuery<Object[]> query = cb.createQuery(Object[].class);
+                Root<?> root = query.from(entityClass);
+                Path<?> key = KeysetPagination.path(root, keyPath);
+                query.multiselect(key, root).where(key.in(chunk));
+
+                rows.addAll(em.createQuery(query).getResultList());
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the maximum number of values bound to a single IN predicate.
+     */
+    static int getChunkSize() {
+        return ConfigurationUtil.getInstance().getInteger("kumuluzee.graphql.jpa.batch.chunk-size").orElse(1000);
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import com.kumuluz.ee.configuration.utils.ConfigurationUtil;
+import com.kumuluz.ee.graphql.classes.Filter;
+import com.kumuluz.ee.graphql.classes.FilterField;
+import com.kumuluz.ee.graphql.classes.FilterType;
+import com.kumuluz.ee.graphql.classes.Pagination;
+import com.kumuluz.ee.graphql.classes.Sort;
+import com.kumuluz.ee.rest.beans.QueryParameters;
+import com.kumuluz.ee.rest.enums.FilterOperation;
+import com.kumuluz.ee.rest.interfaces.CriteriaFilter;
+import com.kumuluz.ee.rest.utils.JPAUtils;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * JpaQuery class - query parameters of a JPA query together with criteria, which cannot be expressed with them
+ *
+ * IN, NIN, INIC and NINIC filters with more values than kumuluzee.graphql.jpa.in-chunk-size are not passed to
+ * {@link JPAUtils} as a single IN predicate, because databases limit the number of values in an IN list. Their
+ * distinct values are split into chunks, which are added to the same query as a criteria filter: a disjunction of IN
+ * predicates for IN and INIC filters and a conjunction of NOT IN predicates for NIN and NINIC filters. Ordering,
+ * offset and count are left to the database.
+ *
+ * Queries without additional criteria are executed through {@link JpaQueryPlanCache}, which reuses compiled queries
+ * for the same filter, sort and field shape.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+final class JpaQuery<T> {
+
+    private final Class<T> tClass;
+    private final Sort sort;
+    private final Filter filter;
+    private final Integer offset;
+    private final Integer limit;
+    private final QueryParameters queryParameters;
+    private final CriteriaFilter<T> criteriaFilter;
+    private final QueryParameters fullQueryParameters;
+
+    private JpaQuery(Class<T> tClass, Sort sort, Filter filter, Integer offset, Integer limit,
+                     QueryParameters queryParameters, CriteriaFilter<T> criteriaFilter,
+                     QueryParameters fullQueryParameters) {
+        this.tClass = tClass;
+        this.sort = sort;
+        this.filter = filter;
+        this.offset = offset;
+        this.limit = limit;
+        this.queryParameters = queryParameters;
+        this.criteriaFilter = criteriaFilter;
+        this.fullQueryParameters = (fullQueryParameters == null) ? queryParameters : fullQueryParameters;
+    }
+
+    private static <T> JpaQuery<T> of(Class<T> tClass, Pagination pagination, Sort sort, Filter filter,
+                                      boolean forcePagination, CriteriaFilter<T> criteriaFilter,
+                                      QueryParameters fullQueryParameters) {
+        boolean paginated = pagination != null || forcePagination;
+        return new JpaQuery<>(tClass, sort, filter,
+                paginated ? GraphQLUtils.getOffset(pagination) : null,
+                paginated ? GraphQLUtils.getLimit(pagination) : null,
+                GraphQLUtils.queryParameters(pagination, sort, filter, forcePagination), criteriaFilter,
+                fullQueryParameters);
+    }
+
+    static <T> JpaQuery<T> of(Class<T> tClass, Pagination pagination, Sort sort, Filter filter,
+                              boolean forcePagination) {
+        if (filter == null || filter.getFields() == null) {
+            return of(tClass, pagination, sort, filter, forcePagination, null, null);
+        }
+
+        int chunkSize = getChunkSize();
+        List<FilterField> fields = new ArrayList<>();
+        List<FilterField> largeInFields = new ArrayList<>();
+        for (FilterField field : filter.getFields()) {
+            if (isLargeIn(field, chunkSize)) {
+                largeInFields.add(field);
+            } else {
+                fields.add(field);
+            }
+        }
+        if (largeInFields.isEmpty()) {
+            return of(tClass, pagination, sort, filter, forcePagination, null, null);
+        }
+
+        CriteriaFilter<T> largeInFilter = (predicate, cb, root) -> {
+            Predicate result = predicate;
+            for (FilterField field : largeInFields) {
+                Predicate chunked = largeInPredicate(cb, root, field, chunkSize);
+                result = (result == null) ? chunked : cb.and(result, chunked);
+            }
+            return result;
+        };
+        return of(tClass, pagination, sort, filter(fields), forcePagination, largeInFilter,
+                GraphQLUtils.queryParameters(pagination, sort, filter, forcePagination));
+    }
+
+    static int getChunkSize() {
+        return ConfigurationUtil.getInstance().getInteger("kumuluzee.graphql.jpa.in-chunk-size").orElse(1000);
+    }
+
+    private static boolean isLargeIn(FilterField field, int chunkSize) {
+        FilterOperation op = field.getOp();
+        if (field.getType() == FilterType.DATE || field.getValue() == null || (op != FilterOperation.IN &&
+                op != FilterOperation.NIN && op != FilterOperation.INIC && op != FilterOperation.NINIC)) {
+            return false;
+        }
+        // counting separators is enough to decide, values are parsed when the query is built
+        int values = 1;
+        String value = field.getValue();
+        for (int i = 0; i < value.length() && values <= chunkSize; i++) {
+            if (value.charAt(i) == ',') {
+                values++;
+            }
+        }
+        return values > chunkSize;
+    }
+
+    private static boolean isNegated(FilterField field) {
+        return field.getOp() == FilterOperation.NIN || field.getOp() == FilterOperation.NINIC;
+    }
+
+    private static Filter filter(List<FilterField> fields) {
+        Filter filter = new Filter();
+        filter.setFields(fields);
+        return filter;
+    }
+
+    /**
+     * Returns a disjunction of IN predicates (a conjunction of NOT IN predicates for NIN and NINIC filters) with at
+     * most chunk-size distinct values each, which matches the same rows as the given filter field.
+     */
+    @SuppressWarnings("unchecked")
+    static Predicate largeInPredicate(CriteriaBuilder cb, Root<?> root, FilterField field, int chunkSize) {
+        FilterOperation op = field.getOp();
+        boolean ignoreCase = op == FilterOperation.INIC || op == FilterOperation.NINIC;
+        Path<?> path = KeysetPagination.path(root, field.getField());
+        Expression<?> expression = ignoreCase ? cb.lower((Expression<String>) path) : path;
+        Class<?> type = ignoreCase ? String.class : FieldValues.wrap(path.getJavaType());
+
+        List<Object> values = new ArrayList<>();
+        for (String value : new LinkedHashSet<>(GraphQLUtils.getStringList(field.getValue(), ignoreCase))) {
+            values.add(FieldValues.convert(value, type));
+        }
+
+        List<Predicate> chunks = new ArrayList<>();
+        for (int start = 0; start < values.size(); start += chunkSize) {
+            Predicate in = expression.in(values.subList(start, Math.min(start + chunkSize, values.size())));
+            chunks.add(isNegated(field) ? cb.not(in) : in);
+        }
+        Predicate[] predicates = chunks.toArray(new Predicate[0]);
+        return isNegated(field) ? cb.and(predicates) : cb.or(predicates);
+    }
+
+    Class<T> getEntityClass() {
+        return tClass;
+    }
+
+    Sort getSort() {
+        return sort;
+    }
+
+    Filter getFilter() {
+        return filter;
+    }
+
+    Integer getOffset() {
+        return offset;
+    }
+
+    Integer getLimit() {
+        return limit;
+    }
+
+    List<String> getFields() {
+        return queryParameters.getFields();
+    }
+
+    /**
+     * Returns query parameters of the query. The returned instance must not be modified.
+     */
+    QueryParameters getQueryParameters() {
+        return queryParameters;
+    }
+
+    /**
+     * Returns query parameters with all filters of the query, including large IN filters, which are left out of
+     * {@link #getQueryParameters()} and applied as a criteria filter. The returned instance must not be modified.
+     */
+    QueryParameters getFullQueryParameters() {
+        return fullQueryParameters;
+    }
+
+    /**
+     * Restricts the query to the given fields.
+     */
+    void setFields(List<String> fields) {
+        queryParameters.setFields(fields);
+    }
+
+    /**
+     * Returns unordered query with the same criteria, which returns only the given fields of the first rows.
+     */
+    JpaQuery<T> firstRows(int rows, List<String> fields) {
+        JpaQuery<T> query = of(tClass, new Pagination(rows, 0), null, filter, true, criteriaFilter,
+                fullQueryParameters);
+        query.setFields(fields);
+        return query;
+    }
+
+    /**
+     * Returns query with the same criteria and fields, which returns the given rows in the given order.
+     */
+    JpaQuery<T> window(Sort order, int offset, int rows) {
+        JpaQuery<T> query = of(tClass, new Pagination(rows, offset), order, filter, true, criteriaFilter,
+                fullQueryParameters);
+        query.setFields(getFields());
+        return query;
+    }
+
+    /**
+     * Returns query with an additional criteria filter.
+     */
+    JpaQuery<T> and(CriteriaFilter<T> filter) {
+        CriteriaFilter<T> first = criteriaFilter;
+        CriteriaFilter<T> combined = (first == null) ? filter :
+                (predicate, cb, root) -> filter.createPredicate(first.createPredicate(predicate, cb, root), cb, root);
+        return new JpaQuery<>(tClass, sort, this.filter, offset, limit, queryParameters, combined,
+                fullQueryParameters);
+    }
+
+    List<T> getResultList(EntityManager em) {
+        if (criteriaFilter != null) {
+            return JPAUtils.queryEntities(em, tClass, queryParameters, criteriaFilter);
+        }
+        List<T> result = JpaQueryPlanCache.getResultList(em, this);
+        return (result != null) ? result : JPAUtils.queryEntities(em, tClass, queryParameters);
+    }
+
+    /**
+     * Returns lazily read results of the query or null, if the query cannot be read as a single result stream. The
+     * stream must be closed.
+     */
+    Stream<T> getResultStream(EntityManager em, int fetchSize) {
+        if (criteriaFilter != null) {
+            return null;
+        }
+        return JpaQueryPlanCache.getResultStream(em, this, fetchSize);
+    }
+
+    Long count(EntityManager em) {
+        if (criteriaFilter != null) {
+            return JPAUtils.queryEntitiesCount(em, tClass, queryParameters, criteriaFilter);
+        }
+        Long count = JpaQueryPlanCache.count(em, this);
+        return (count != null) ? count : JPAUtils.queryEntitiesCount(em, tClass, queryParameters);
+    }
+}
@@ -0,0 +1,531 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import com.kumuluz.ee.configuration.utils.ConfigurationUtil;
+import com.kumuluz.ee.graphql.classes.Filter;
+import com.kumuluz.ee.graphql.classes.FilterField;
+import com.kumuluz.ee.graphql.classes.FilterType;
+import com.kumuluz.ee.graphql.classes.Sort;
+import com.kumuluz.ee.graphql.classes.SortField;
+import com.kumuluz.ee.rest.enums.FilterOperation;
+import com.kumuluz.ee.rest.enums.OrderDirection;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.*;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * JpaQueryPlanCache class - reuses compiled JPA queries for queries with the same shape
+ *
+ * The shape of a query consists of the entity class, filtered fields with their operations and types, sort fields
+ * with their directions and selected fields. The first query of a shape is built with filter values as parameters and
+ * registered as a named query on the entity manager factory, later queries of the same shape only bind values, so
+ * neither the JPA provider nor the database compile the query again.
+ *
+ * The cache is an alternative to {@link com.kumuluz.ee.rest.utils.JPAUtils} for the most common queries and is only
+ * used if enabled with kumuluzee.graphql.jpa.query-cache.enabled. Shapes with fields, which are not basic attributes of
+ * the entity, are left to JPAUtils. If creating or executing a cached query fails, its shape is marked as unsupported
+ * and the query is left to JPAUtils as well.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+final class JpaQueryPlanCache {
+
+    private static final Logger LOG = Logger.getLogger(JpaQueryPlanCache.class.getName());
+
+    private static final Plan UNSUPPORTED = new Plan(null, null, null, null, null);
+    private static final AtomicLong QUERY_COUNTER = new AtomicLong();
+    private static final Map<EntityManagerFactory, Map<String, Plan>> PLANS = new WeakHashMap<>();
+
+    private JpaQueryPlanCache() {
+    }
+
+    /**
+     * Returns results of the query or null, if the query shape is not supported.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> List<T> getResultList(EntityManager em, JpaQuery<T> query) {
+        Plan plan = getPlan(em, query, false);
+        if (plan == null) {
+            return null;
+        }
+
+        List<Object> values = plan.values(query.getFilter());
+        try {
+            List<?> rows = createDataQuery(em, query, plan, values).getResultList();
+            if (plan.projection == null) {
+                return (List<T>) rows;
+            }
+            List<T> entities = new ArrayList<>(rows.size());
+            for (Object row : rows) {
+                entities.add((T) plan.toEntity((Tuple) row));
+            }
+            return entities;
+        } catch (RuntimeException e) {
+            unsupported(em, query, false, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns lazily read results of the query or null, if the query shape is not supported. The stream must be
+     * closed.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Stream<T> getResultStream(EntityManager em, JpaQuery<T> query, int fetchSize) {
+        Plan plan = getPlan(em, query, false);
+        if (plan == null) {
+            return null;
+        }
+
+        List<Object> values = plan.values(query.getFilter());
+        Stream<?> rows;
+        try {
+            TypedQuery<?> typedQuery = createDataQuery(em, query, plan, values);
+            typedQuery.setHint("eclipselink.jdbc.fetch-size", fetchSize);
+            typedQuery.setHint("org.hibernate.fetchSize", fetchSize);
+            rows = typedQuery.getResultStream();
+        } catch (RuntimeException e) {
+            unsupported(em, query, false, e);
+            return null;
+        }
+        if (plan.projection == null) {
+            return (Stream<T>) rows;
+        }
+        return rows.map(row -> (T) plan.toEntity((Tuple) row));
+    }
+
+    /**
+     * Returns number of entities matching the query or null, if the query shape is not supported.
+     */
+    static Long count(EntityManager em, JpaQuery<?> query) {
+        Plan plan = getPlan(em, query, true);
+        if (plan == null) {
+            return null;
+        }
+        List<Object> values = plan.values(query.getFilter());
+        try {
+            return (Long) plan.createQuery(em, values).getSingleResult();
+        } catch (RuntimeException e) {
+            unsupported(em, query, true, e);
+            return null;
+        }
+    }
+
+    private static TypedQuery<?> createDataQuery(EntityManager em, JpaQuery<?> query, Plan plan, List<Object> values) {
+        TypedQuery<?> typedQuery = plan.createQuery(em, values);
+        if (query.getOffset() != null) {
+            typedQuery.setFirstResult(query.getOffset());
+        }
+        if (query.getLimit() != null) {
+            typedQuery.setMaxResults(query.getLimit());
+        }
+        return typedQuery;
+    }
+
+    private static Plan getPlan(EntityManager em, JpaQuery<?> query, boolean count) {
+        ConfigurationUtil configurationUtil = ConfigurationUtil.getInstance();
+        if (!configurationUtil.getBoolean("kumuluzee.graphql.jpa.query-cache.enabled").orElse(false)) {
+            return null;
+        }
+
+        Map<String, Plan> plans = getPlans(em);
+        String shape = shape(query, count);
+        Plan plan = plans.get(shape);
+        if (plan == null) {
+            // named queries cannot be removed from the factory, new shapes are not cached once the cache is full
+            if (plans.size() >= configurationUtil.getInteger("kumuluzee.graphql.jpa.query-cache.size").orElse(500)) {
+                return null;
+            }
+            plan = build(em, query, count);
+            Plan existing = plans.putIfAbsent(shape, plan);
+            if (existing != null) {
+                plan = existing;
+            }
+        }
+        return (plan == UNSUPPORTED) ? null : plan;
+    }
+
+    private static Map<String, Plan> getPlans(EntityManager em) {
+        EntityManagerFactory emf = em.getEntityManagerFactory();
+        synchronized (PLANS) {
+            return PLANS.computeIfAbsent(emf, k -> new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Marks the shape of the query as unsupported, so that queries of this shape are left to JPAUtils.
+     */
+    private static void unsupported(EntityManager em, JpaQuery<?> query, boolean count, RuntimeException e) {
+        LOG.fine("Cached query for " + query.getEntityClass().getName() + " failed, query is not cached anymore: " +
+                e.getMessage());
+        getPlans(em).put(shape(query, count), UNSUPPORTED);
+    }
+
+    private static String shape(JpaQuery<?> query, boolean count) {
+        StringBuilder shape = new StringBuilder(query.getEntityClass().getName()).append(count ? "#count" : "#data");
+        Filter filter = query.getFilter();
+        if (filter != null && filter.getFields() != null) {
+            shape.append("|filter");
+            for (FilterField field : filter.getFields()) {
+                shape.append(':').append(field.getField()).append(',').append(field.getOp()).append(',')
+                        .append(field.getType()).append(',').append(field.getValue() == null);
+            }
+        }
+        if (!count) {
+            Sort sort = query.getSort();
+            if (sort != null && sort.getFields() != null) {
+                shape.append("|sort");
+                for (SortField field : sort.getFields()) {
+                    shape.append(':').append(field.getField()).append(',').append(field.getOrder());
+                }
+            }
+            List<String> fields = query.getFields();
+            if (fields != null && !fields.isEmpty()) {
+                shape.append("|fields");
+                for (String field : fields) {
+                    shape.append(':').append(field);
+                }
+            }
+        }
+        return shape.toString();
+    }
+
+    private static <T> Plan build(EntityManager em, JpaQuery<T> query, boolean count) {
+        Class<T> tClass = query.getEntityClass();
+        try {
+            EntityType<T> entityType = em.getMetamodel().entity(tClass);
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            List<Parameter> parameters = new ArrayList<>();
+            TypedQuery<?> typedQuery;
+            Class<?> resultClass;
+            List<Field> projection = null;
+            Constructor<T> constructor = null;
+
+            if (count) {
+                CriteriaQuery<Long> criteriaQuery = cb.createQuery(Long.class);
+                Root<T> root = criteriaQuery.from(tClass);
+                Predicate[] predicates = predicates(cb, root, entityType, query.getFilter(), parameters);
+                if (predicates == null) {
+                    return UNSUPPORTED;
+                }
+                criteriaQuery.select(cb.count(root)).where(predicates);
+                typedQuery = em.createQuery(criteriaQuery);
+                resultClass = Long.class;
+            } else if (query.getFields() == null || query.getFields().isEmpty()) {
+                CriteriaQuery<T> criteriaQuery = cb.createQuery(tClass);
+                Root<T> root = criteriaQuery.from(tClass);
+                Predicate[] predicates = predicates(cb, root, entityType, query.getFilter(), parameters);
+                List<Order> orders = orders(cb, root, entityType, query.getSort());
+                if (predicates == null || orders == null) {
+                    return UNSUPPORTED;
+                }
+                criteriaQuery.select(root).where(predicates).orderBy(orders);
+                typedQuery = em.createQuery(criteriaQuery);
+                resultClass = tClass;
+            } else {
+                projection = projection(em, entityType, query.getFields());
+                if (projection == null) {
+                    return UNSUPPORTED;
+                }
+                CriteriaQuery<Tuple> criteriaQuery = cb.createTupleQuery();
+                Root<T> root = criteriaQuery.from(tClass);
+                Predicate[] predicates = predicates(cb, root, entityType, query.getFilter(), parameters);
+                List<Order> orders = orders(cb, root, entityType, query.getSort());
+                if (predicates == null || orders == null) {
+                    return UNSUPPORTED;
+                }
+                List<Selection<?>> selections = new ArrayList<>();
+                for (Field field : projection) {
+                    selections.add(root.get(field.getName()));
+                }
+                criteriaQuery.multiselect(selections).where(predicates).orderBy(orders);
+                typedQuery = em.createQuery(criteriaQuery);
+                resultClass = Tuple.class;
+                constructor = tClass.getDeclaredConstructor();
+                constructor.setAccessible(true);
+            }
+
+            String name = "kumuluzee-graphql:" + tClass.getSimpleName() + ":" + QUERY_COUNTER.incrementAndGet();
+            em.getEntityManagerFactory().addNamedQuery(name, typedQuery);
+            return new Plan(name, resultClass, parameters, projection, constructor);
+        } catch (RuntimeException | ReflectiveOperationException e) {
+            LOG.fine("Query for " + tClass.getName() + " is not cached: " + e.getMessage());
+            return UNSUPPORTED;
+        }
+    }
+
+    private static <T> Predicate[] predicates(CriteriaBuilder cb, Root<T> root, EntityType<T> entityType,
+                                              Filter filter, List<Parameter> parameters) {
+        if (filter == null || filter.getFields() == null) {
+            return new Predicate[0];
+        }
+
+        List<Predicate> predicates = new ArrayList<>();
+        for (FilterField field : filter.getFields()) {
+            FilterOperation op = field.getOp();
+            SingularAttribute<? super T, ?> attribute = basicAttribute(entityType, field.getField());
+            if (op == null || attribute == null) {
+                return null;
+            }
+            Class<?> type = FieldValues.wrap(attribute.getJavaType());
+            Path<?> path = root.get(attribute.getName());
+
+            if (op == FilterOperation.ISNULL) {
+                predicates.add(cb.isNull(path));
+                continue;
+            } else if (op == FilterOperation.ISNOTNULL) {
+                predicates.add(cb.isNotNull(path));
+                continue;
+            }
+
+            boolean date = field.getType() == FilterType.DATE;
+            boolean ignoreCase = op == FilterOperation.EQIC || op == FilterOperation.NEQIC ||
+                    op == FilterOperation.LIKEIC || op == FilterOperation.INIC || op == FilterOperation.NINIC;
+            if (field.getValue() == null || (date ? !FieldValues.isTemporal(type) : !FieldValues.isSupported(type)) ||
+                    ((ignoreCase || op == FilterOperation.LIKE) && (date || type != String.class))) {
+                return null;
+            }
+
+            String name = "p" + parameters.size();
+            Predicate predicate = predicate(cb, path, op, date, name, type);
+            if (predicate == null) {
+                return null;
+            }
+            predicates.add(predicate);
+            parameters.add(new Parameter(name, op, date, type));
+        }
+        return predicates.toArray(new Predicate[0]);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Predicate predicate(CriteriaBuilder cb, Path<?> path, FilterOperation op, boolean date,
+                                       String name, Class<?> type) {
+        if (date && op != FilterOperation.EQ && op != FilterOperation.NEQ && op != FilterOperation.GT &&
+                op != FilterOperation.GTE && op != FilterOperation.LT && op != FilterOperation.LTE) {
+            return null;
+        }
+
+        switch (op) {
+            case EQ:
+                return cb.equal(path, cb.parameter(type, name));
+            case NEQ:
+                return cb.notEqual(path, cb.parameter(type, name));
+            case EQIC:
+                return cb.equal(cb.lower((Path<String>) path), cb.parameter(String.class, name));
+            case NEQIC:
+                return cb.notEqual(cb.lower((Path<String>) path), cb.parameter(String.class, name));
+            case LIKE:
+                return cb.like((Path<String>) path, cb.parameter(String.class, name));
+            case LIKEIC:
+                return cb.like(cb.lower((Path<String>) path), cb.parameter(String.class, name));
+            case GT:
+                return cb.greaterThan((Path<Comparable>) path, (Expression<Comparable>) cb.parameter(type, name));
+            case GTE:
+                return cb.greaterThanOrEqualTo((Path<Comparable>) path,
+                        (Expression<Comparable>) cb.parameter(type, name));
+            case LT:
+                return cb.lessThan((Path<Comparable>) path, (Expression<Comparable>) cb.parameter(type, name));
+            case LTE:
+                return cb.lessThanOrEqualTo((Path<Comparable>) path, (Expression<Comparable>) cb.parameter(type, name));
+            case IN:
+                return path.in(cb.parameter(Collection.class, name));
+            case NIN:
+                return cb.not(path.in(cb.parameter(Collection.class, name)));
+            case INIC:
+                return cb.lower((Path<String>) path).in(cb.parameter(Collection.class, name));
+            case NINIC:
+                return cb.not(cb.lower((Path<String>) path).in(cb.parameter(Collection.class, name)));
+            default:
+                return null;
+        }
+    }
+
+    private static <T> List<Order> orders(CriteriaBuilder cb, Root<T> root, EntityType<T> entityType, Sort sort) {
+        List<Order> orders = new ArrayList<>();
+        if (sort == null || sort.getFields() == null) {
+            return orders;
+        }
+        for (SortField field : sort.getFields()) {
+            SingularAttribute<? super T, ?> attribute = basicAttribute(entityType, field.getField());
+            if (attribute == null || field.getOrder() == null) {
+                return null;
+            }
+            Path<?> path = root.get(attribute.getName());
+            orders.add(field.getOrder() == OrderDirection.DESC ? cb.desc(path) : cb.asc(path));
+        }
+        return orders;
+    }
+
+    /**
+     * Returns entity fields selected by the projection, which always includes the id, or null, if any of the fields
+     * is not a basic attribute backed by a field.
+     */
+    private static <T> List<Field> projection(EntityManager em, EntityType<T> entityType, List<String> names) {
+        Set<String> selected = new LinkedHashSet<>(names);
+        selected.add(KeysetPagination.getIdAttribute(em, entityType.getJavaType()));
+
+        List<Field> fields = new ArrayList<>();
+        for (String name : selected) {
+            SingularAttribute<? super T, ?> attribute = basicAttribute(entityType, name);
+            if (attribute == null) {
+                return null;
+            }
+            Member member = attribute.getJavaMember();
+            if (!(member instanceof Field)) {
+                return null;
+            }
+            Field field = (Field) member;
+            field.setAccessible(true);
+            fields.add(field);
+        }
+        return fields;
+    }
+
+    private static <T> SingularAttribute<? super T, ?> basicAttribute(EntityType<T> entityType, String name) {
+        if (name == null || name.indexOf('.') >= 0) {
+            return null;
+        }
+        Attribute<? super T, ?> attribute;
+        try {
+            attribute = entityType.getAttribute(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!(attribute instanceof SingularAttribute) ||
+                attribute.getPersistentAttributeType() != Attribute.PersistentAttributeType.BASIC) {
+            return null;
+        }
+        return (SingularAttribute<? super T, ?>) attribute;
+    }
+
+    private static final class Plan {
+
+        private final String name;
+        private final Class<?> resultClass;
+        private final List<Parameter> parameters;
+        private final List<Field> projection;
+        private final Constructor<?> constructor;
+
+        private Plan(String name, Class<?> resultClass, List<Parameter> parameters, List<Field> projection,
+                     Constructor<?> constructor) {
+            this.name = name;
+            this.resultClass = resultClass;
+            this.parameters = parameters;
+            this.projection = projection;
+            this.constructor = constructor;
+        }
+
+        /**
+         * Converts filter values to parameter values. Invalid filter values fail here, before the query is created.
+         */
+        private List<Object> values(Filter filter) {
+            List<Object> values = new ArrayList<>(parameters.size());
+            if (!parameters.isEmpty()) {
+                // parameters are created in the order of filter fields, skipping fields without values
+                Iterator<Parameter> parameterIterator = parameters.iterator();
+                for (FilterField field : filter.getFields()) {
+                    if (field.getOp() == FilterOperation.ISNULL || field.getOp() == FilterOperation.ISNOTNULL) {
+                        continue;
+                    }
+                    values.add(parameterIterator.next().value(field.getValue()));
+                }
+            }
+            return values;
+        }
+
+        private TypedQuery<?> createQuery(EntityManager em, List<Object> values) {
+            TypedQuery<?> query = em.createNamedQuery(name, resultClass);
+            for (int i = 0; i < parameters.size(); i++) {
+                query.setParameter(parameters.get(i).name, values.get(i));
+            }
+            return query;
+        }
+
+        private Object toEntity(Tuple tuple) {
+            try {
+                Object entity = constructor.newInstance();
+                for (int i = 0; i < projection.size(); i++) {
+                    projection.get(i).set(entity, tuple.get(i));
+                }
+                return entity;
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Unable to create entity " + constructor.getName() + ".", e);
+            }
+        }
+    }
+
+    private static final class Parameter {
+
+        private final String name;
+        private final FilterOperation op;
+        private final boolean date;
+        private final Class<?> type;
+
+        private Parameter(String name, FilterOperation op, boolean date, Class<?> type) {
+            this.name = name;
+            this.op = op;
+            this.date = date;
+            this.type = type;
+        }
+
+        private Object value(String value) {
+            if (date) {
+                return FieldValues.convert(FieldValues.parseDate(value), type);
+            }
+            switch (op) {
+                case IN:
+                case NIN:
+                    List<Object> values = new ArrayList<>();
+                    for (String item : GraphQLUtils.getStringList(value, false)) {
+                        values.add(FieldValues.convert(item, type));
+                    }
+                    return values;
+                case INIC:
+                case NINIC:
+                    return GraphQLUtils.getStringList(value, true);
+                case EQIC:
+                case NEQIC:
+                case LIKEIC:
+                    return value.toLowerCase();
+                case LIKE:
+                    return value;
+                default:
+                    return FieldValues.convert(value, type);
+            }
+        }
+    }
+}
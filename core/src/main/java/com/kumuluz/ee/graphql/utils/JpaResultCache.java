@@ -0,0 +1,315 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import com.kumuluz.ee.configuration.utils.ConfigurationUtil;
+import com.kumuluz.ee.graphql.classes.Filter;
+import com.kumuluz.ee.graphql.classes.FilterField;
+import com.kumuluz.ee.graphql.classes.Sort;
+import com.kumuluz.ee.graphql.classes.SortField;
+
+import javax.persistence.EntityManager;
+import javax.persistence.metamodel.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JpaResultCache class - caches pages returned by {@link GraphQLUtils#process} for JPA entities
+ *
+ * Pages are cached per entity class and normalized query (offset, limit, order, filters, selected fields and count
+ * mode) for the entity TTL. Weight of a page is the number of its entities and the least recently used pages are
+ * evicted once the total weight exceeds max-weight. Only pages of entities, which are not managed by the entity
+ * manager (projections of the selected fields), are cached.
+ *
+ * A page depends on its entity class and on the classes of associations used by its selected, sorted and filtered
+ * fields. Pages are invalidated when any of their dependencies or their subclasses change, by
+ * {@link JpaResultCacheListener} or by calling {@link #invalidate(Class)}.
+ *
+ * Cached entities are shared between requests and must not be modified.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public final class JpaResultCache {
+
+    private static final String PREFIX = "kumuluzee.graphql.jpa.result-cache.";
+
+    private static final Map<Key, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+    private static final Map<Class<?>, AtomicLong> GENERATIONS = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Long> TTLS = new ConcurrentHashMap<>();
+    private static long weight;
+
+    private JpaResultCache() {
+    }
+
+    /**
+     * Removes cached pages, which depend on the given entity class or on any of its superclasses.
+     */
+    public static void invalidate(Class<?> entityClass) {
+        for (Map.Entry<Class<?>, AtomicLong> generation : GENERATIONS.entrySet()) {
+            if (generation.getKey().isAssignableFrom(entityClass)) {
+                generation.getValue().incrementAndGet();
+            }
+        }
+        synchronized (ENTRIES) {
+            Iterator<Entry> iterator = ENTRIES.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.dependsOn(entityClass)) {
+                    weight -= entry.weight;
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all cached pages.
+     */
+    public static void clear() {
+        for (AtomicLong generation : GENERATIONS.values()) {
+            generation.incrementAndGet();
+        }
+        synchronized (ENTRIES) {
+            ENTRIES.clear();
+            weight = 0;
+        }
+    }
+
+    static boolean isEnabled(Class<?> entityClass) {
+        return ConfigurationUtil.getInstance().getBoolean(PREFIX + "enabled").orElse(false) && getTtl(entityClass) > 0;
+    }
+
+    private static long getTtl(Class<?> entityClass) {
+        return TTLS.computeIfAbsent(entityClass, c -> {
+            ConfigurationUtil configurationUtil = ConfigurationUtil.getInstance();
+            int seconds = configurationUtil.getInteger(PREFIX + "entities." + c.getName() + ".ttl")
+                    .orElse(configurationUtil.getInteger(PREFIX + "ttl").orElse(60));
+            return TimeUnit.SECONDS.toNanos(seconds);
+        });
+    }
+
+    /**
+     * Returns the normalized query as a list of its components. Sort and filter fields are nested lists, so values
+     * containing separators cannot make two different queries equal.
+     */
+    static List<Object> key(int offset, int limit, Sort sort, Filter filter, List<String> fields,
+                            CountMode countMode) {
+        List<Object> sortKey = new ArrayList<>();
+        if (sort != null && sort.getFields() != null) {
+            for (SortField field : sort.getFields()) {
+                sortKey.add(Arrays.asList(field.getField(), field.getOrder()));
+            }
+        }
+        List<Object> filterKey = new ArrayList<>();
+        if (filter != null && filter.getFields() != null) {
+            for (FilterField field : filter.getFields()) {
+                filterKey.add(Arrays.asList(field.getField(), field.getOp(), field.getType(), field.getValue()));
+            }
+        }
+        List<String> fieldsKey = new ArrayList<>();
+        if (fields != null) {
+            fieldsKey.addAll(fields);
+            Collections.sort(fieldsKey);
+        }
+        return Arrays.asList(offset, limit, sortKey, filterKey, fieldsKey, countMode);
+    }
+
+    /**
+     * Returns the entity class together with entity classes of associations on the given field, sort and filter
+     * paths.
+     */
+    static Set<Class<?>> dependencies(EntityManager em, Class<?> entityClass, List<String> fields, Sort sort,
+                                      Filter filter) {
+        List<String> paths = new ArrayList<>();
+        if (fields != null) {
+            paths.addAll(fields);
+        }
+        if (sort != null && sort.getFields() != null) {
+            for (SortField field : sort.getFields()) {
+                paths.add(field.getField());
+            }
+        }
+        if (filter != null && filter.getFields() != null) {
+            for (FilterField field : filter.getFields()) {
+                paths.add(field.getField());
+            }
+        }
+
+        Set<Class<?>> dependencies = new HashSet<>();
+        dependencies.add(entityClass);
+        Metamodel metamodel = em.getMetamodel();
+        for (String path : paths) {
+            ManagedType<?> current = metamodel.managedType(entityClass);
+            for (String part : path.split("\\.")) {
+                Attribute<?, ?> attribute;
+                try {
+                    attribute = current.getAttribute(part);
+                } catch (IllegalArgumentException e) {
+                    break;
+                }
+                Type<?> target = (attribute instanceof PluralAttribute) ?
+                        ((PluralAttribute<?, ?, ?>) attribute).getElementType() :
+                        ((SingularAttribute<?, ?>) attribute).getType();
+                if (target instanceof EntityType) {
+                    dependencies.add(target.getJavaType());
+                }
+                if (!(target instanceof ManagedType)) {
+                    break;
+                }
+                current = (ManagedType<?>) target;
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * Returns current generation of the dependencies, which has to be passed to {@link #put} of a page read after
+     * this call, so pages read before an invalidation are not cached.
+     */
+    static long generation(Set<Class<?>> dependencies) {
+        long generation = 0;
+        for (Class<?> dependency : dependencies) {
+            generation += GENERATIONS.computeIfAbsent(dependency, c -> new AtomicLong()).get();
+        }
+        return generation;
+    }
+
+    static Entry get(Class<?> entityClass, List<Object> key) {
+        synchronized (ENTRIES) {
+            Key cacheKey = new Key(entityClass, key);
+            Entry entry = ENTRIES.get(cacheKey);
+            if (entry != null && entry.expiresAt - System.nanoTime() < 0) {
+                ENTRIES.remove(cacheKey);
+                weight -= entry.weight;
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    static void put(Class<?> entityClass, List<Object> key, Set<Class<?>> dependencies, long generation, Entry entry) {
+        long maxWeight = ConfigurationUtil.getInstance().getInteger(PREFIX + "max-weight").orElse(10000);
+        if (entry.weight > maxWeight) {
+            return;
+        }
+        entry.expiresAt = System.nanoTime() + getTtl(entityClass);
+        entry.dependencies = dependencies;
+        synchronized (ENTRIES) {
+            // generations only grow, so the sum is unchanged only if none of the dependencies has been invalidated
+            if (generation(dependencies) != generation) {
+                return;
+            }
+            Entry previous = ENTRIES.put(new Key(entityClass, key), entry);
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += entry.weight;
+
+            Iterator<Entry> eldest = ENTRIES.values().iterator();
+            while (weight > maxWeight && eldest.hasNext()) {
+                weight -= eldest.next().weight;
+                eldest.remove();
+            }
+        }
+    }
+
+    static final class Entry {
+
+        private final List<?> items;
+        private final boolean counted;
+        private final Integer total;
+        private final boolean capped;
+        private final boolean estimated;
+        private final long weight;
+        private long expiresAt;
+        private Set<Class<?>> dependencies = Collections.emptySet();
+
+        Entry(List<?> items, boolean counted, Integer total, boolean capped, boolean estimated) {
+            this.items = Collections.unmodifiableList(new ArrayList<>(items));
+            this.counted = counted;
+            this.total = total;
+            this.capped = capped;
+            this.estimated = estimated;
+            this.weight = items.size() + 1;
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> List<T> getItems() {
+            return (List<T>) items;
+        }
+
+        boolean isCounted() {
+            return counted;
+        }
+
+        Integer getTotal() {
+            return total;
+        }
+
+        boolean isCapped() {
+            return capped;
+        }
+
+        boolean isEstimated() {
+            return estimated;
+        }
+
+        private boolean dependsOn(Class<?> entityClass) {
+            for (Class<?> dependency : dependencies) {
+                if (dependency.isAssignableFrom(entityClass)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Key {
+
+        private final Class<?> entityClass;
+        private final List<Object> key;
+
+        private Key(Class<?> entityClass, List<Object> key) {
+            this.entityClass = entityClass;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return entityClass == other.entityClass && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * entityClass.hashCode() + key.hashCode();
+        }
+    }
+}
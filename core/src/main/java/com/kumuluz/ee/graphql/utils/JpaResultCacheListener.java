@@ -0,0 +1,98 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * JpaResultCacheListener class - entity listener invalidating {@link JpaResultCache} when entities change
+ *
+ * Pages are invalidated when the change is flushed and, in JTA transactions, again after the transaction completes,
+ * so pages read by other requests between the flush and the commit are not kept. Without JTA (resource local
+ * transactions) pages are only invalidated when the change is flushed.
+ *
+ * Register it with {@code @EntityListeners(JpaResultCacheListener.class)} on cached entities or as a default entity
+ * listener in orm.xml.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class JpaResultCacheListener {
+
+    private static final Logger LOG = Logger.getLogger(JpaResultCacheListener.class.getName());
+
+    private static final String REGISTRY_NAME = "java:comp/TransactionSynchronizationRegistry";
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void invalidate(Object entity) {
+        JpaResultCache.invalidate(entity.getClass());
+
+        TransactionSynchronizationRegistry registry = Registry.INSTANCE;
+        if (registry == null || registry.getTransactionStatus() != Status.STATUS_ACTIVE) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Set<Class<?>> changed = (Set<Class<?>>) registry.getResource(JpaResultCacheListener.class);
+        if (changed == null) {
+            Set<Class<?>> entityClasses = new HashSet<>();
+            registry.putResource(JpaResultCacheListener.class, entityClasses);
+            registry.registerInterposedSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    entityClasses.forEach(JpaResultCache::invalidate);
+                }
+            });
+            changed = entityClasses;
+        }
+        changed.add(entity.getClass());
+    }
+
+    private static class Registry {
+
+        private static final TransactionSynchronizationRegistry INSTANCE = lookup();
+
+        private static TransactionSynchronizationRegistry lookup() {
+            try {
+                return (TransactionSynchronizationRegistry) new InitialContext().lookup(REGISTRY_NAME);
+            } catch (NamingException | RuntimeException e) {
+                LOG.fine("Transaction synchronization registry is not available, result cache is only invalidated " +
+                        "when changes are flushed.");
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import com.kumuluz.ee.graphql.classes.Sort;
+import com.kumuluz.ee.graphql.classes.SortField;
+import com.kumuluz.ee.rest.enums.OrderDirection;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+/**
+ * JpaStreamIterator class - reads results of a JPA query in batches of fetch-size entities
+ *
+ * Results are read from the JPA result stream, if the query is supported by {@link JpaQueryPlanCache}, or with
+ * consecutive offset queries ordered by the entity id otherwise. The entity manager is cleared before every batch, so
+ * only a single batch of entities is kept in memory.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+final class JpaStreamIterator<T> implements Iterator<T>, AutoCloseable {
+
+    private final EntityManager em;
+    private final JpaQuery<T> query;
+    private final SelectionFetchPlan fetchPlan;
+    private final int fetchSize;
+
+    private Stream<T> stream;
+    private Iterator<T> rows;
+    private Sort windowOrder;
+    private int offset;
+    private boolean exhausted;
+
+    private List<T> batch = new ArrayList<>();
+    private int position;
+
+    JpaStreamIterator(EntityManager em, JpaQuery<T> query, SelectionFetchPlan fetchPlan, int fetchSize) {
+        this.em = em;
+        this.query = query;
+        this.fetchPlan = fetchPlan;
+        this.fetchSize = fetchSize;
+
+        this.stream = query.getResultStream(em, fetchSize);
+        if (stream != null) {
+            rows = stream.iterator();
+        } else {
+            boolean singleId = em.getMetamodel().entity(query.getEntityClass()).hasSingleIdAttribute();
+            windowOrder = singleId ?
+                    withIdOrder(query.getSort(), KeysetPagination.getIdAttribute(em, query.getEntityClass())) :
+                    query.getSort();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (position < batch.size()) {
+            return true;
+        }
+        if (exhausted) {
+            return false;
+        }
+        if (!batch.isEmpty()) {
+            // previous batch has already been written
+            em.clear();
+        }
+        batch = nextBatch();
+        position = 0;
+        if (batch.size() < fetchSize) {
+            exhausted = true;
+        }
+        if (fetchPlan != null && !batch.isEmpty()) {
+            fetchPlan.load(em, query.getEntityClass(), batch);
+        }
+        return !batch.isEmpty();
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batch.get(position++);
+    }
+
+    private List<T> nextBatch() {
+        if (rows == null) {
+            List<T> window = query.window(windowOrder, offset, fetchSize).getResultList(em);
+            offset += window.size();
+            return window;
+        }
+        List<T> next = new ArrayList<>(fetchSize);
+        while (next.size() < fetchSize && rows.hasNext()) {
+            next.add(rows.next());
+        }
+        return next;
+    }
+
+    @Override
+    public void close() {
+        exhausted = true;
+        if (!batch.isEmpty()) {
+            // entities of the last batch are not needed anymore
+            em.clear();
+            batch = new ArrayList<>();
+        }
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+    }
+
+    /**
+     * Appends the id to the order, so consecutive windows neither skip nor repeat rows.
+     */
+    static Sort withIdOrder(Sort sort, String idField) {
+        List<SortField> fields = new ArrayList<>();
+        if (sort != null && sort.getFields() != null) {
+            for (SortField field : sort.getFields()) {
+                if (idField.equals(field.getField())) {
+                    return sort;
+                }
+                fields.add(field);
+            }
+        }
+        SortField id = new SortField();
+        id.setField(idField);
+        id.setOrder(OrderDirection.ASC);
+        fields.add(id);
+
+        Sort order = new Sort();
+        order.setFields(fields);
+        return order;
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.kumuluz.ee.graphql.classes.*;
+import com.kumuluz.ee.rest.enums.OrderDirection;
+import com.kumuluz.ee.rest.interfaces.CriteriaFilter;
+import graphql.GraphQLException;
+import io.leangen.graphql.execution.ResolutionEnvironment;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.*;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+import java.io.IOException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.*;
+import java.util.*;
+
+/**
+ * KeysetPagination class - cursor (keyset) pagination of JPA queries
+ *
+ * Rows are ordered by the requested sort fields followed by the entity id. A cursor contains the values of these
+ * fields for a single row and is translated to a seek predicate, so the database never skips rows as with offset
+ * pagination.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+final class KeysetPagination {
+
+    private static final TypeReference<List<String>> CURSOR_TYPE = new TypeReference<List<String>>() {
+    };
+
+    private KeysetPagination() {
+    }
+
+    static <T> Connection<T> process(EntityManager em, Class<T> tClass, ResolutionEnvironment resolutionEnvironment,
+                                     CursorPagination pagination, Sort sort, Filter filter) {
+        if (pagination == null) {
+            pagination = new CursorPagination();
+        }
+        boolean backward = pagination.getFirst() == null &&
+                (pagination.getLast() != null || pagination.getBefore() != null);
+        Integer requested = backward ? pagination.getLast() : pagination.getFirst();
+        int count = (requested == null) ? GraphQLUtils.getDefaultLimit() : requested;
+        if (count < 0) {
+            throw new GraphQLException("Arguments first and last must not be negative.");
+        }
+        String cursor = backward ? pagination.getBefore() : pagination.getAfter();
+
+        List<String> keys = new ArrayList<>();
+        List<Boolean> descending = new ArrayList<>();
+        if (sort != null && sort.getFields() != null) {
+            for (SortField sortField : sort.getFields()) {
+                keys.add(sortField.getField());
+                descending.add(sortField.getOrder() == OrderDirection.DESC);
+            }
+        }
+        String idField = getIdAttribute(em, tClass);
+        if (!keys.contains(idField)) {
+            keys.add(idField);
+            descending.add(false);
+        }
+        String signature = signature(keys, descending);
+
+        List<SortField> order = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            SortField sortField = new SortField();
+            sortField.setField(keys.get(i));
+            sortField.setOrder(descending.get(i) ^ backward ? OrderDirection.DESC : OrderDirection.ASC);
+            order.add(sortField);
+        }
+        Sort keysetSort = new Sort();
+        keysetSort.setFields(order);
+
+        JpaQuery<T> query = JpaQuery.of(tClass, new Pagination(count + 1, 0), keysetSort, filter, true);
+        if (resolutionEnvironment != null) {
+            List<String> fields = GraphQLUtils.getFieldsFromResolutionEnvironment(resolutionEnvironment, "edges/node");
+            if (!fields.isEmpty()) {
+                for (String key : keys) {
+                    if (!fields.contains(key)) {
+                        fields.add(key);
+                    }
+                }
+                query.setFields(fields);
+            }
+        }
+
+        List<T> rows;
+        if (cursor == null) {
+            rows = query.getResultList(em);
+        } else {
+            List<String> values = decodeCursor(cursor, keys, signature);
+            CriteriaFilter<T> seek = (predicate, cb, root) -> {
+                Predicate seekPredicate = seekPredicate(cb, root, keys, descending, backward, values);
+                return (predicate == null) ? seekPredicate : cb.and(predicate, seekPredicate);
+            };
+            rows = query.and(seek).getResultList(em);
+        }
+
+        boolean hasMore = rows.size() > count;
+        rows = new ArrayList<>(hasMore ? rows.subList(0, count) : rows);
+        if (backward) {
+            Collections.reverse(rows);
+        }
+
+        List<Edge<T>> edges = new ArrayList<>(rows.size());
+        for (T row : rows) {
+            edges.add(new Edge<>(row, encodeCursor(row, keys, signature)));
+        }
+        String startCursor = edges.isEmpty() ? null : edges.get(0).getCursor();
+        String endCursor = edges.isEmpty() ? null : edges.get(edges.size() - 1).getCursor();
+        PageInfo pageInfo = backward ?
+                new PageInfo(hasMore, cursor != null, startCursor, endCursor) :
+                new PageInfo(cursor != null, hasMore, startCursor, endCursor);
+
+        Integer total = null;
+        if (GraphQLUtils.isSelected(resolutionEnvironment, "totalCount")) {
+            total = JpaQuery.of(tClass, null, null, filter, false).count(em).intValue();
+        }
+        return new Connection<>(edges, pageInfo, total);
+    }
+
+    static String getIdAttribute(EntityManager em, Class<?> tClass) {
+        EntityType<?> entityType = em.getMetamodel().entity(tClass);
+        if (!entityType.hasSingleIdAttribute()) {
+            throw new GraphQLException("Cursor pagination is not supported for entities with composite ids.");
+        }
+        for (SingularAttribute<?, ?> attribute : entityType.getSingularAttributes()) {
+            if (attribute.isId()) {
+                return attribute.getName();
+            }
+        }
+        throw new GraphQLException("Unable to find id attribute of entity " + tClass.getSimpleName() + ".");
+    }
+
+    private static String signature(List<String> keys, List<Boolean> descending) {
+        StringBuilder signature = new StringBuilder();
+        for (int i = 0; i < keys.size(); i++) {
+            if (i > 0) {
+                signature.append(',');
+            }
+            signature.append(keys.get(i)).append(descending.get(i) ? " DESC" : " ASC");
+        }
+        return signature.toString();
+    }
+
+    /**
+     * Seek predicate (k1 > v1) OR (k1 = v1 AND k2 > v2) OR ..., with comparisons inverted for descending keys and
+     * backward pagination.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Predicate seekPredicate(CriteriaBuilder cb, Root<?> root, List<String> keys,
+                                           List<Boolean> descending, boolean backward, List<String> values) {
+        Predicate result = null;
+        Predicate equalPrefix = null;
+        for (int i = 0; i < keys.size(); i++) {
+            Path path = path(root, keys.get(i));
+            // decoded into the type of the persistent attribute, not the (possibly less precise) getter type
+            Comparable value = (Comparable) decodeValue(values.get(i), FieldValues.wrap(path.getJavaType()));
+            Predicate comparison = (descending.get(i) ^ backward) ?
+                    cb.lessThan(path, value) : cb.greaterThan(path, value);
+            Predicate term = (equalPrefix == null) ? comparison : cb.and(equalPrefix, comparison);
+            result = (result == null) ? term : cb.or(result, term);
+
+            Predicate equal = cb.equal(path, value);
+            equalPrefix = (equalPrefix == null) ? equal : cb.and(equalPrefix, equal);
+        }
+        return result;
+    }
+
+    static Path<?> path(Root<?> root, String field) {
+        Path<?> path = root;
+        for (String part : field.split("\\.")) {
+            path = path.get(part);
+        }
+        return path;
+    }
+
+    static String encodeCursor(Object row, List<String> keys, String signature) {
+        List<String> values = new ArrayList<>(keys.size() + 1);
+        values.add(signature);
+        for (String key : keys) {
+            values.add(encodeValue(PropertyAccessor.of(row.getClass(), key).get(row)));
+        }
+        try {
+            byte[] json = SerializationFormat.JSON.getObjectMapper().writeValueAsBytes(values);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+        } catch (IOException e) {
+            throw new GraphQLException("Unable to encode cursor. " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the values of the cursor, which are decoded to the attribute types with
+     * {@link #decodeValue(String, Class)}.
+     */
+    static List<String> decodeCursor(String cursor, List<String> keys, String signature) {
+        List<String> values;
+        try {
+            byte[] json = Base64.getUrlDecoder().decode(cursor);
+            values = SerializationFormat.JSON.getObjectMapper().readValue(json, CURSOR_TYPE);
+        } catch (IllegalArgumentException | IOException e) {
+            throw new GraphQLException("Invalid cursor.");
+        }
+        if (values.size() != keys.size() + 1 || !signature.equals(values.get(0))) {
+            throw new GraphQLException("Cursor does not match the requested sort.");
+        }
+
+        for (int i = 0; i < keys.size(); i++) {
+            if (values.get(i + 1) == null) {
+                throw new GraphQLException("Cursor pagination requires non-null values of sort field " +
+                        keys.get(i) + ".");
+            }
+        }
+        return values.subList(1, values.size());
+    }
+
+    static String encodeValue(Object value) {
+        if (value == null) {
+            return null;
+        } else if (value instanceof Timestamp) {
+            // keeps the nanoseconds
+            return ((Timestamp) value).toInstant().toString();
+        } else if (value instanceof Date) {
+            // java.sql.Date and java.sql.Time do not support toInstant()
+            return Instant.ofEpochMilli(((Date) value).getTime()).toString();
+        } else if (value instanceof Enum) {
+            return ((Enum<?>) value).name();
+        }
+        return value.toString();
+    }
+
+    static Object decodeValue(String value, Class<?> type) {
+        try {
+            if (type == java.sql.Date.class) {
+                return new java.sql.Date(Instant.parse(value).toEpochMilli());
+            } else if (type == Time.class) {
+                return new Time(Instant.parse(value).toEpochMilli());
+            } else if (type == Timestamp.class || type == Date.class) {
+                // temporal attributes declared as Date hold timestamps, which may be more precise than milliseconds
+                return Timestamp.from(Instant.parse(value));
+            } else if (type == Instant.class) {
+                return Instant.parse(value);
+            } else if (type == LocalDate.class) {
+                return LocalDate.parse(value);
+            } else if (type == LocalDateTime.class) {
+                return LocalDateTime.parse(value);
+            } else if (type == LocalTime.class) {
+                return LocalTime.parse(value);
+            } else if (type == OffsetDateTime.class) {
+                return OffsetDateTime.parse(value);
+            } else if (type == ZonedDateTime.class) {
+                return ZonedDateTime.parse(value);
+            }
+        } catch (DateTimeException e) {
+            throw new GraphQLException("Invalid cursor.");
+        }
+
+        Object converted = FieldValues.convert(value, type);
+        if (!(converted instanceof Comparable)) {
+            throw new GraphQLException("Cursor pagination is not supported on fields of type " +
+                    type.getSimpleName() + ".");
+        }
+        return converted;
+    }
+}
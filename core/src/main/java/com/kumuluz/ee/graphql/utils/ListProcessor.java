@@ -0,0 +1,422 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import com.kumuluz.ee.configuration.utils.ConfigurationUtil;
+import com.kumuluz.ee.graphql.classes.Filter;
+import com.kumuluz.ee.graphql.classes.FilterField;
+import com.kumuluz.ee.graphql.classes.FilterType;
+import com.kumuluz.ee.graphql.classes.Sort;
+import com.kumuluz.ee.rest.enums.FilterOperation;
+import graphql.GraphQLException;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+/**
+ * ListProcessor class - sorting, filtering and pagination of in-memory lists
+ *
+ * The list is traversed once. Matching elements are counted while they are collected and only the requested page is
+ * materialized. Without sorting, elements outside of the page are never stored. With sorting and a small page, only
+ * the first offset + limit elements are kept in a bounded heap.
+ *
+ * Large lists can optionally be filtered and sorted on a fork-join pool (kumuluzee.graphql.lists.parallel.*).
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class ListProcessor {
+
+    /**
+     * Bounded heap is used instead of the full sort when offset + limit is at most 1/TOP_K_RATIO of the list size (never
+     * without a limit).
+     */
+    private static final int TOP_K_RATIO = 4;
+
+    private ListProcessor() {
+    }
+
+    /**
+     * Filters, sorts and pages the given elements.
+     *
+     * @param offset number of matching elements to skip
+     * @param limit  maximum number of returned elements, null for no limit
+     * @return page of the matching elements, a view of the given list if it is neither sorted nor filtered
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Page<T> process(Collection<T> items, Sort sort, Filter filter, int offset, Integer limit) {
+        QueryPlan plan = QueryPlan.of(sort, filter);
+        Predicate<Object> predicate = plan.bind(filter);
+        Comparator<Object> comparator = plan.getComparator();
+        long end = (limit == null) ? Long.MAX_VALUE : (long) offset + limit;
+
+        if (predicate == null && comparator == null && items instanceof List) {
+            // nothing to filter or sort, the page is a view of the list
+            List<T> list = (List<T>) items;
+            return new Page<>(list.subList(Math.min(offset, list.size()), (int) Math.min(end, list.size())), list.size());
+        }
+
+        if (ParallelSettings.ENABLED && items.size() >= ParallelSettings.THRESHOLD &&
+                (predicate != null || comparator != null)) {
+            return ParallelSettings.POOL.invoke(ForkJoinTask.adapt(
+                    () -> processParallel(items, predicate, comparator, offset, end)));
+        }
+
+        if (comparator == null) {
+            List<T> page = new ArrayList<>();
+            int total = 0;
+            for (T item : items) {
+                if (predicate != null && !predicate.test(item)) {
+                    continue;
+                }
+                if (total >= offset && total < end) {
+                    page.add(item);
+                }
+                total++;
+            }
+            return new Page<>(page, total);
+        }
+
+        if (end <= items.size() / TOP_K_RATIO) {
+            return topK(items, predicate, comparator, offset, (int) end);
+        }
+
+        List<T> matched = new ArrayList<>();
+        for (T item : items) {
+            if (predicate == null || predicate.test(item)) {
+                matched.add(item);
+            }
+        }
+        matched.sort(comparator);
+
+        return page(matched, offset, end);
+    }
+
+    /**
+     * Filters and sorts on the fork-join pool. Filtering keeps the encounter order and the parallel sort is stable,
+     * so the result is the same as in sequential processing.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Page<T> processParallel(Collection<T> items, Predicate<Object> predicate,
+                                               Comparator<Object> comparator, int offset, long end) {
+        if (comparator == null) {
+            return page(items.parallelStream().filter(predicate).collect(Collectors.toList()), offset, end);
+        }
+
+        Object[] matched = (predicate == null) ? items.toArray() : items.parallelStream().filter(predicate).toArray();
+        if (end <= matched.length / TOP_K_RATIO) {
+            return topK((List<T>) Arrays.asList(matched), null, comparator, offset, (int) end);
+        }
+        Arrays.parallelSort(matched, comparator);
+        return page((List<T>) Arrays.asList(matched), offset, end);
+    }
+
+    private static <T> Page<T> page(List<T> matched, int offset, long end) {
+        int total = matched.size();
+        int from = Math.min(offset, total);
+        int to = (int) Math.min(end, total);
+        return new Page<>(new ArrayList<>(matched.subList(from, to)), total);
+    }
+
+    /**
+     * Keeps the first k elements in a bounded max-heap instead of sorting all matching elements. Ties are broken by
+     * encounter order, so the result is the same as with the (stable) full sort.
+     */
+    private static <T> Page<T> topK(Collection<T> items, Predicate<Object> predicate, Comparator<Object> comparator,
+                                    int offset, int k) {
+        Comparator<Ranked<T>> ranking = (a, b) -> {
+            int c = comparator.compare(a.item, b.item);
+            return (c != 0) ? c : Long.compare(a.index, b.index);
+        };
+        PriorityQueue<Ranked<T>> heap = new PriorityQueue<>(Math.max(k, 1), ranking.reversed());
+
+        int total = 0;
+        for (T item : items) {
+            if (predicate != null && !predicate.test(item)) {
+                continue;
+            }
+            int index = total++;
+            if (heap.size() < k) {
+                heap.add(new Ranked<>(item, index));
+            } else if (k > 0 && comparator.compare(item, heap.peek().item) < 0) {
+                // later elements lose ties, so only strictly smaller ones replace the largest kept element
+                heap.poll();
+                heap.add(new Ranked<>(item, index));
+            }
+        }
+
+        List<Ranked<T>> ranked = new ArrayList<>(heap);
+        ranked.sort(ranking);
+        List<T> page = new ArrayList<>(Math.max(ranked.size() - offset, 0));
+        for (int i = offset; i < ranked.size(); i++) {
+            page.add(ranked.get(i).item);
+        }
+        return new Page<>(page, total);
+    }
+
+    private static class Ranked<T> {
+        private final T item;
+        private final long index;
+
+        private Ranked(T item, long index) {
+            this.item = item;
+            this.index = index;
+        }
+    }
+
+    /**
+     * Reads a field path from elements, remembering the accessor of the last seen element class.
+     */
+    static class FieldReader {
+
+        private final String path;
+        private volatile Binding binding;
+
+        FieldReader(String path) {
+            if (path == null) {
+                throw new GraphQLException("Field name must be provided.");
+            }
+            this.path = path;
+        }
+
+        Object read(Object element) {
+            if (element == null) {
+                return null;
+            }
+            return accessor(element.getClass()).get(element);
+        }
+
+        PropertyAccessor accessor(Class<?> type) {
+            Binding current = binding;
+            if (current == null || current.type != type) {
+                current = new Binding(type, PropertyAccessor.of(type, path));
+                binding = current;
+            }
+            return current.accessor;
+        }
+
+        private static class Binding {
+            private final Class<?> type;
+            private final PropertyAccessor accessor;
+
+            private Binding(Class<?> type, PropertyAccessor accessor) {
+                this.type = type;
+                this.accessor = accessor;
+            }
+        }
+    }
+
+    /**
+     * Single filter field bound to its values. Filter values are parsed once and converted to the runtime type of the
+     * field values.
+     */
+    static class FieldCondition implements Predicate<Object> {
+
+        private final FilterOperation op;
+        private final FieldReader reader;
+        private final Object value;
+        private final List<String> values;
+        private final Pattern pattern;
+        private volatile Converted converted;
+
+        FieldCondition(FieldReader reader, FilterField field) {
+            this.op = field.getOp();
+            this.reader = reader;
+
+            String raw = field.getValue();
+            if (raw == null && op != FilterOperation.ISNULL && op != FilterOperation.ISNOTNULL) {
+                throw new GraphQLException("Filter value must be provided for field " + field.getField() + ".");
+            }
+
+            if (op == FilterOperation.IN || op == FilterOperation.NIN) {
+                this.values = GraphQLUtils.getStringList(raw, false);
+            } else if (op == FilterOperation.INIC || op == FilterOperation.NINIC) {
+                this.values = GraphQLUtils.getStringList(raw, true);
+            } else {
+                this.values = null;
+            }
+
+            if (raw != null && field.getType() == FilterType.DATE && values == null) {
+                this.value = FieldValues.parseDate(raw);
+            } else {
+                this.value = raw;
+            }
+
+            if (op == FilterOperation.LIKE) {
+                this.pattern = likePattern(raw, 0);
+            } else if (op == FilterOperation.LIKEIC) {
+                this.pattern = likePattern(raw, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            } else {
+                this.pattern = null;
+            }
+        }
+
+        private static Pattern likePattern(String value, int flags) {
+            // values are regular expressions, % is accepted as in JPA LIKE patterns
+            try {
+                return Pattern.compile(value.replace("%", ".*"), flags);
+            } catch (PatternSyntaxException e) {
+                throw new GraphQLException("Invalid pattern " + value + ". " + e.getDescription());
+            }
+        }
+
+        @Override
+        public boolean test(Object element) {
+            Object fieldValue = reader.read(element);
+
+            if (op == FilterOperation.ISNULL) {
+                return fieldValue == null;
+            } else if (op == FilterOperation.ISNOTNULL) {
+                return fieldValue != null;
+            } else if (fieldValue == null) {
+                return false;
+            }
+
+            switch (op) {
+                case EQ:
+                    return compare(fieldValue) == 0;
+                case NEQ:
+                    return compare(fieldValue) != 0;
+                case EQIC:
+                    return fieldValue.toString().equalsIgnoreCase(value.toString());
+                case NEQIC:
+                    return !fieldValue.toString().equalsIgnoreCase(value.toString());
+                case LIKE:
+                case LIKEIC:
+                    return pattern.matcher(fieldValue.toString()).matches();
+                case GT:
+                    return compare(fieldValue) > 0;
+                case GTE:
+                    return compare(fieldValue) >= 0;
+                case LT:
+                    return compare(fieldValue) < 0;
+                case LTE:
+                    return compare(fieldValue) <= 0;
+                case IN:
+                    return contains(fieldValue);
+                case NIN:
+                    return !contains(fieldValue);
+                case INIC:
+                    return values.contains(fieldValue.toString().toLowerCase());
+                case NINIC:
+                    return !values.contains(fieldValue.toString().toLowerCase());
+                default:
+                    throw new GraphQLException("Filter operation " + op + " is not supported.");
+            }
+        }
+
+        private int compare(Object fieldValue) {
+            Object literal = converted(fieldValue.getClass()).value;
+            if (literal == null) {
+                return fieldValue.toString().compareTo(value.toString());
+            }
+            return FieldValues.compare(fieldValue, literal);
+        }
+
+        private boolean contains(Object fieldValue) {
+            Set<Object> literals = converted(fieldValue.getClass()).values;
+            if (literals == null) {
+                return values.contains(fieldValue.toString());
+            }
+            return literals.contains(fieldValue);
+        }
+
+        private Converted converted(Class<?> type) {
+            Converted current = converted;
+            if (current == null || current.type != type) {
+                current = new Converted(type, value, values);
+                converted = current;
+            }
+            return current;
+        }
+
+        private static class Converted {
+            private final Class<?> type;
+            private final Object value;
+            private final Set<Object> values;
+
+            private Converted(Class<?> type, Object value, List<String> values) {
+                this.type = type;
+                if (values == null) {
+                    this.value = FieldValues.convert(value, type);
+                    this.values = null;
+                } else {
+                    Set<Object> converted = new HashSet<>();
+                    for (String v : values) {
+                        Object c = FieldValues.convert(v, type);
+                        if (c == null) {
+                            converted = null;
+                            break;
+                        }
+                        converted.add(c);
+                    }
+                    this.value = null;
+                    this.values = converted;
+                }
+            }
+        }
+    }
+
+    /**
+     * Parallel processing settings, read on first use.
+     */
+    private static class ParallelSettings {
+
+        private static final boolean ENABLED;
+        private static final int THRESHOLD;
+        private static final ForkJoinPool POOL;
+
+        static {
+            ConfigurationUtil configurationUtil = ConfigurationUtil.getInstance();
+            ENABLED = configurationUtil.getBoolean("kumuluzee.graphql.lists.parallel.enabled").orElse(false);
+            THRESHOLD = configurationUtil.getInteger("kumuluzee.graphql.lists.parallel.threshold").orElse(10000);
+            Optional<Integer> parallelism = configurationUtil.getInteger("kumuluzee.graphql.lists.parallel.parallelism");
+            POOL = parallelism.isPresent() ? new ForkJoinPool(parallelism.get()) : ForkJoinPool.commonPool();
+        }
+    }
+
+    /**
+     * Page of matching elements together with the number of all matching elements.
+     */
+    public static class Page<T> {
+
+        private final List<T> items;
+        private final int total;
+
+        public Page(List<T> items, int total) {
+            this.items = items;
+            this.total = total;
+        }
+
+        public List<T> getItems() {
+            return items;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+    }
+}
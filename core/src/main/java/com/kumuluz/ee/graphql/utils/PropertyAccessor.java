@@ -0,0 +1,194 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import graphql.GraphQLException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * PropertyAccessor class - cached getter chain for a (nested) field path, used for sorting and filtering
+ *
+ * Getters are resolved once per class and path and invoked through method handles. Nested getters are resolved against
+ * the runtime class of the intermediate values (e.g. a subclass or a JPA proxy), not against the declared return type.
+ * Accessors are cached with {@link ClassValue}, so the cache does not keep classes of redeployed applications loaded.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class PropertyAccessor {
+
+    private static final ClassValue<ConcurrentMap<String, PropertyAccessor>> CACHE =
+            new ClassValue<ConcurrentMap<String, PropertyAccessor>>() {
+                @Override
+                protected ConcurrentMap<String, PropertyAccessor> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private final String path;
+    private final Method method;
+    private final MethodHandle getter;
+    private final String remainingPath;
+
+    private PropertyAccessor(String path, Method method, MethodHandle getter, String remainingPath) {
+        this.path = path;
+        this.method = method;
+        this.getter = getter;
+        this.remainingPath = remainingPath;
+    }
+
+    /**
+     * Returns the accessor for the given path (for example "lecturer.assistant.name") on the given class.
+     *
+     * @throws GraphQLException if the first getter in the path does not exist or returns a list (nested getters
+     *                          are resolved and checked once the intermediate values are known)
+     */
+    public static PropertyAccessor of(Class<?> type, String path) {
+        return CACHE.get(type).computeIfAbsent(path, p -> resolve(type, p));
+    }
+
+    private static PropertyAccessor resolve(Class<?> type, String path) {
+        int separator = path.indexOf('.');
+        String field = (separator < 0) ? path : path.substring(0, separator);
+        String remainingPath = (separator < 0) ? null : path.substring(separator + 1);
+
+        Method method = findGetter(type, field);
+        if (method.getReturnType().equals(List.class)) {
+            throw new GraphQLException("Unable to sort/filter on a list.");
+        }
+        return new PropertyAccessor(path, method, toMethodHandle(method), remainingPath);
+    }
+
+    private PropertyAccessor next(Object value) {
+        return of(value.getClass(), remainingPath);
+    }
+
+    private static Method findGetter(Class<?> type, String field) {
+        if (field.isEmpty()) {
+            throw new GraphQLException("Unable to find requested getter. Empty field name.");
+        }
+        try {
+            return type.getMethod("get" + field.substring(0, 1).toUpperCase() + field.substring(1));
+        } catch (NoSuchMethodException e) {
+            throw new GraphQLException("Unable to find requested getter. " + e.getMessage());
+        }
+    }
+
+    private static MethodHandle toMethodHandle(Method method) {
+        try {
+            MethodHandle handle;
+            try {
+                handle = MethodHandles.publicLookup().unreflect(method);
+            } catch (IllegalAccessException e) {
+                // public method declared in a non-public class
+                method.setAccessible(true);
+                handle = MethodHandles.lookup().unreflect(method);
+            }
+            return handle.asType(GETTER_TYPE);
+        } catch (Exception e) {
+            throw new GraphQLException("Unable to access requested getter. " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the value at the end of the path or null, if any value along the path is null.
+     */
+    public Object get(Object target) {
+        if (target == null) {
+            return null;
+        }
+        Object value = invoke(target);
+        if (remainingPath == null || value == null) {
+            return value;
+        }
+        return next(value).get(value);
+    }
+
+    /**
+     * Returns the object, declaring the last getter in the path or null, if any value along the path is null.
+     */
+    public Object getParent(Object target) {
+        if (target == null || remainingPath == null) {
+            return target;
+        }
+        Object value = invoke(target);
+        if (value == null) {
+            return null;
+        }
+        return next(value).getParent(value);
+    }
+
+    private Object invoke(Object target) {
+        try {
+            return (Object) getter.invokeExact(target);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new GraphQLException("Unable to read field " + path + ". " + t.getMessage());
+        }
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the last getter in the path, resolved against the runtime classes of the values along the path.
+     *
+     * @return last getter or null, if any value along the path is null
+     */
+    public Method getMethod(Object target) {
+        if (remainingPath == null) {
+            return method;
+        }
+        Object value = invoke(target);
+        if (value == null) {
+            return null;
+        }
+        return next(value).getMethod(value);
+    }
+
+    /**
+     * Returns the last getter in the path, resolved against the declared return types along the path. Used where no
+     * values are available (e.g. for the attribute types of an entity class).
+     */
+    public Method getMethod() {
+        if (remainingPath == null) {
+            return method;
+        }
+        return of(method.getReturnType(), remainingPath).getMethod();
+    }
+
+    /**
+     * Returns the declared type of the value at the end of the path.
+     */
+    public Class<?> getType() {
+        return getMethod().getReturnType();
+    }
+}
@@ -22,7 +22,6 @@ package com.kumuluz.ee.graphql.utils;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.BufferedReader;
@@ -64,10 +63,11 @@ public class QueryParameters {
                 parameters.query = request.getParameter("query");
                 parameters.operationName = request.getParameter("operationName");
                 parameters.variables = getVariables(request.getParameter("variables"));
-            } else if(request.getHeader("Content-Type").equals("application/graphql")) {
+            } else if("application/graphql".equals(request.getContentType())) {
                 parameters.query = request.getReader().lines().collect(Collectors.joining());
             } else {
-                Map<String, Object> json = readJSON(request);
+                SerializationFormat format = SerializationFormat.fromContentType(request.getContentType());
+                Map<String, Object> json = (format != null && format.isBinary()) ? readBinary(request, format) : readJSON(request);
                 parameters.query = (String) json.get("query");
                 parameters.operationName = (String) json.get("operationName");
                 parameters.variables = getVariables(json.get("variables"));
@@ -88,7 +88,7 @@ public class QueryParameters {
             return vars;
         }
         try {
-            Map<String, Object> vars = new ObjectMapper().readValue(String.valueOf(variables),
+            Map<String, Object> vars = SerializationFormat.JSON.getObjectMapper().readValue(String.valueOf(variables),
                     new TypeReference<Map<String, Object>>() {});
             return (vars != null) ? vars : Collections.emptyMap();
         } catch (JsonProcessingException e) {
@@ -99,13 +99,25 @@ public class QueryParameters {
     private static Map<String, Object> readJSON(HttpServletRequest request) {
         String s = readPostBody(request);
         try {
-            Map<String, Object> json = new ObjectMapper().readValue(s, new TypeReference<Map<String, Object>>() {});
+            Map<String, Object> json = SerializationFormat.JSON.getObjectMapper().readValue(s, new TypeReference<Map<String, Object>>() {});
             return (json != null) ? json : Collections.emptyMap();
         } catch (JsonProcessingException e) {
             return Collections.emptyMap();
         }
     }
 
+    private static Map<String, Object> readBinary(HttpServletRequest request, SerializationFormat format) {
+        try {
+            Map<String, Object> body = format.getObjectMapper().readValue(request.getInputStream(),
+                    new TypeReference<Map<String, Object>>() {});
+            return (body != null) ? body : Collections.emptyMap();
+        } catch (JsonProcessingException e) {
+            return Collections.emptyMap();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private static String readPostBody(HttpServletRequest request) {
         try {
             StringBuilder sb = new StringBuilder();
@@ -0,0 +1,163 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import com.kumuluz.ee.graphql.classes.Filter;
+import com.kumuluz.ee.graphql.classes.FilterField;
+import com.kumuluz.ee.graphql.classes.Sort;
+import com.kumuluz.ee.graphql.classes.SortField;
+import com.kumuluz.ee.rest.enums.OrderDirection;
+import graphql.GraphQLException;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+/**
+ * QueryPlan class - compiled form of Sort and Filter, used by in-memory processing
+ *
+ * Plans are cached by the shape of the query (fields, operations, types and directions), so repeated queries with the
+ * same shape reuse resolved field readers and the comparator chain and only bind new filter values.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+final class QueryPlan {
+
+    private static final int MAX_CACHED_PLANS = 1000;
+    private static final ConcurrentMap<String, QueryPlan> CACHE = new ConcurrentHashMap<>();
+
+    private final ListProcessor.FieldReader[] filterReaders;
+    private final Comparator<Object> comparator;
+
+    private QueryPlan(Sort sort, Filter filter) {
+        List<FilterField> filterFields = fields(filter);
+        filterReaders = new ListProcessor.FieldReader[filterFields.size()];
+        for (int i = 0; i < filterReaders.length; i++) {
+            FilterField field = filterFields.get(i);
+            if (field.getOp() == null) {
+                throw new GraphQLException("Filter operation must be provided for field " + field.getField() + ".");
+            }
+            filterReaders[i] = new ListProcessor.FieldReader(field.getField());
+        }
+        comparator = createComparator(sort);
+    }
+
+    static QueryPlan of(Sort sort, Filter filter) {
+        String shape = shape(sort, filter);
+        QueryPlan plan = CACHE.get(shape);
+        if (plan == null) {
+            plan = new QueryPlan(sort, filter);
+            if (CACHE.size() >= MAX_CACHED_PLANS) {
+                CACHE.clear();
+            }
+            CACHE.putIfAbsent(shape, plan);
+        }
+        return plan;
+    }
+
+    private static String shape(Sort sort, Filter filter) {
+        StringBuilder shape = new StringBuilder();
+        for (FilterField field : fields(filter)) {
+            shape.append(field.getField()).append('\u0000')
+                    .append(field.getOp()).append('\u0000')
+                    .append(field.getType()).append('\u0001');
+        }
+        shape.append('\u0002');
+        if (sort != null && sort.getFields() != null) {
+            for (SortField field : sort.getFields()) {
+                shape.append(field.getField()).append('\u0000')
+                        .append(field.getOrder()).append('\u0001');
+            }
+        }
+        return shape.toString();
+    }
+
+    private static List<FilterField> fields(Filter filter) {
+        if (filter == null || filter.getFields() == null) {
+            return Collections.emptyList();
+        }
+        return filter.getFields();
+    }
+
+    /**
+     * Returns predicate matching elements which satisfy all fields of the given filter or null, if there is nothing to
+     * filter. The filter must have the shape this plan was compiled for.
+     */
+    Predicate<Object> bind(Filter filter) {
+        List<FilterField> filterFields = fields(filter);
+        if (filterFields.isEmpty()) {
+            return null;
+        }
+        ListProcessor.FieldCondition[] conditions = new ListProcessor.FieldCondition[filterFields.size()];
+        for (int i = 0; i < conditions.length; i++) {
+            conditions[i] = new ListProcessor.FieldCondition(filterReaders[i], filterFields.get(i));
+        }
+        if (conditions.length == 1) {
+            return conditions[0];
+        }
+        return element -> {
+            for (ListProcessor.FieldCondition condition : conditions) {
+                if (!condition.test(element)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    /**
+     * Returns comparator ordering elements by all sort fields or null, if there is nothing to sort. Null values are
+     * placed last in ascending and first in descending order.
+     */
+    Comparator<Object> getComparator() {
+        return comparator;
+    }
+
+    private static Comparator<Object> createComparator(Sort sort) {
+        if (sort == null || sort.getFields() == null || sort.getFields().isEmpty()) {
+            return null;
+        }
+        Comparator<Object> comparator = null;
+        for (SortField field : sort.getFields()) {
+            ListProcessor.FieldReader reader = new ListProcessor.FieldReader(field.getField());
+            Comparator<Object> fieldComparator = (a, b) -> compareNullsLast(reader.read(a), reader.read(b));
+            if (field.getOrder() == OrderDirection.DESC) {
+                fieldComparator = fieldComparator.reversed();
+            }
+            comparator = (comparator == null) ? fieldComparator : comparator.thenComparing(fieldComparator);
+        }
+        return comparator;
+    }
+
+    private static int compareNullsLast(Object a, Object b) {
+        if (a == null) {
+            return (b == null) ? 0 : 1;
+        }
+        if (b == null) {
+            return -1;
+        }
+        return FieldValues.compare(a, b);
+    }
+}
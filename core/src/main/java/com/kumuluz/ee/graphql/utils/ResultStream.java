@@ -0,0 +1,111 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+/**
+ * ResultStream class - list result, which is read lazily while the response is being written
+ *
+ * Elements are produced by the underlying iterator only once, so the stream can be iterated a single time. It is
+ * closed when the last element has been read, when reading or writing of the elements fails (if it is written by
+ * {@link ExecutionResultWriter}) and when it is iterated again. The size is computed separately and is only needed if the result is not
+ * streamed (for example with a custom execution strategy).
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class ResultStream<T> extends AbstractCollection<T> implements AutoCloseable {
+
+    private final Supplier<? extends Iterator<T>> iteratorSupplier;
+    private final Supplier<Integer> sizeSupplier;
+    private Iterator<T> iterator;
+    private Integer size;
+    private boolean closed;
+
+    ResultStream(Supplier<? extends Iterator<T>> iteratorSupplier, Supplier<Integer> sizeSupplier) {
+        this.iteratorSupplier = iteratorSupplier;
+        this.sizeSupplier = sizeSupplier;
+    }
+
+    @Override
+    public synchronized Iterator<T> iterator() {
+        if (iterator != null || closed) {
+            // release the underlying cursor, the result cannot be used anymore
+            close();
+            throw new IllegalStateException("ResultStream can only be iterated once.");
+        }
+        iterator = iteratorSupplier.get();
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                if (closed) {
+                    return false;
+                }
+                if (!iterator.hasNext()) {
+                    close();
+                    return false;
+                }
+                return true;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return iterator.next();
+            }
+        };
+    }
+
+    @Override
+    public synchronized int size() {
+        if (size == null) {
+            size = sizeSupplier.get();
+        }
+        return size;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (iterator instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) iterator).close();
+            } catch (Exception e) {
+                throw new IllegalStateException("Unable to close result stream.", e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        // do not consume the stream
+        return getClass().getSimpleName() + "@" + Integer.toHexString(hashCode());
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import javax.persistence.EntityGraph;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.Subgraph;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.FetchParent;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.*;
+import java.util.*;
+
+/**
+ * SelectionFetchPlan class - loads associations selected in the GraphQL query for a page of entities
+ *
+ * Selected field paths are mapped to associations of the entity. After the page is queried, the associations are
+ * loaded for all entities of the page at once instead of lazily, one query per entity. To-one associations are loaded
+ * with one query, which join fetches all of them. Every selected collection is loaded with its own query, which join
+ * fetches the collection, so that collections are not multiplied with each other. Associations below the join fetched
+ * ones are loaded as described by the {@code javax.persistence.loadgraph} hint.
+ *
+ * The queries only use standard JPA, entities of the page are managed and are returned by the queries again, so the
+ * persistence provider initializes the fetched associations on them.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+final class SelectionFetchPlan {
+
+    private static final int MAX_IDS_PER_QUERY = 1000;
+
+    private final Set<String> joinPaths;
+    private final Map<String, Set<String>> collectionPaths;
+
+    private SelectionFetchPlan(Set<String> joinPaths, Map<String, Set<String>> collectionPaths) {
+        this.joinPaths = joinPaths;
+        this.collectionPaths = collectionPaths;
+    }
+
+    static SelectionFetchPlan of(EntityManager em, Class<?> tClass, List<String> fields) {
+        Set<String> joinPaths = new LinkedHashSet<>();
+        Map<String, Set<String>> collectionPaths = new LinkedHashMap<>();
+
+        EntityType<?> entityType = em.getMetamodel().entity(tClass);
+        if (!entityType.hasSingleIdAttribute()) {
+            return new SelectionFetchPlan(joinPaths, collectionPaths);
+        }
+        for (String field : fields) {
+            ManagedType<?> current = entityType;
+            StringBuilder path = new StringBuilder();
+            // path of the first collection on the field path, associations below it are loaded with the collection
+            String collection = null;
+
+            for (String part : field.split("\\.")) {
+                Attribute<?, ?> attribute;
+                try {
+                    attribute = current.getAttribute(part);
+                } catch (IllegalArgumentException e) {
+                    break;
+                }
+                if (path.length() > 0) {
+                    path.append('.');
+                }
+                path.append(part);
+
+                Type<?> target;
+                if (attribute instanceof PluralAttribute) {
+                    target = ((PluralAttribute<?, ?, ?>) attribute).getElementType();
+                } else {
+                    target = ((SingularAttribute<?, ?>) attribute).getType();
+                }
+                if (attribute.isAssociation()) {
+                    if (collection == null && attribute.isCollection()) {
+                        collection = path.toString();
+                    }
+                    if (collection == null) {
+                        joinPaths.add(path.toString());
+                    } else {
+                        collectionPaths.computeIfAbsent(collection, c -> new LinkedHashSet<>()).add(path.toString());
+                    }
+                }
+                if (!(target instanceof ManagedType)) {
+                    break;
+                }
+                current = (ManagedType<?>) target;
+            }
+        }
+
+        return new SelectionFetchPlan(joinPaths, collectionPaths);
+    }
+
+    boolean isEmpty() {
+        return joinPaths.isEmpty() && collectionPaths.isEmpty();
+    }
+
+    /**
+     * Loads selected associations of the given entities, which must be managed by the entity manager.
+     */
+    <T> void load(EntityManager em, Class<T> tClass, List<T> entities) {
+        if (isEmpty() || entities.isEmpty()) {
+            return;
+        }
+
+        PersistenceUnitUtil persistenceUnitUtil = em.getEntityManagerFactory().getPersistenceUnitUtil();
+        String idAttribute = KeysetPagination.getIdAttribute(em, tClass);
+
+        List<Object> ids = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            ids.add(persistenceUnitUtil.getIdentifier(entity));
+        }
+
+        for (int start = 0; start < ids.size(); start += MAX_IDS_PER_QUERY) {
+            List<Object> chunk = ids.subList(start, Math.min(start + MAX_IDS_PER_QUERY, ids.size()));
+
+            if (!joinPaths.isEmpty()) {
+                load(em, tClass, idAttribute, chunk, joinPaths, joinPaths);
+            }
+            for (Map.Entry<String, Set<String>> collection : collectionPaths.entrySet()) {
+                Set<String> fetchPaths = new LinkedHashSet<>(joinPaths);
+                fetchPaths.add(collection.getKey());
+                Set<String> graphPaths = new LinkedHashSet<>(fetchPaths);
+                graphPaths.addAll(collection.getValue());
+                load(em, tClass, idAttribute, chunk, fetchPaths, graphPaths);
+            }
+        }
+    }
+
+    private <T> void load(EntityManager em, Class<T> tClass, String idAttribute, List<Object> ids,
+                          Set<String> fetchPaths, Set<String> graphPaths) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<T> query = cb.createQuery(tClass);
+        Root<T> root = query.from(tClass);
+
+        Map<String, FetchParent<?, ?>> fetches = new HashMap<>();
+        for (String path : fetchPaths) {
+            FetchParent<?, ?> parent = root;
+            StringBuilder prefix = new StringBuilder();
+            for (String part : path.split("\\.")) {
+                if (prefix.length() > 0) {
+                    prefix.append('.');
+                }
+                prefix.append(part);
+                FetchParent<?, ?> current = parent;
+                parent = fetches.computeIfAbsent(prefix.toString(), p -> current.fetch(part, JoinType.LEFT));
+            }
+        }
+        query.select(root).distinct(true).where(root.get(idAttribute).in(ids));
+
+        TypedQuery<T> typedQuery = em.createQuery(query);
+        typedQuery.setHint("javax.persistence.loadgraph", createEntityGraph(em, tClass, graphPaths));
+        typedQuery.getResultList();
+    }
+
+    private static <T> EntityGraph<T> createEntityGraph(EntityManager em, Class<T> tClass, Set<String> paths) {
+        EntityGraph<T> entityGraph = em.createEntityGraph(tClass);
+        Map<String, Subgraph<?>> subgraphs = new HashMap<>();
+
+        for (String path : paths) {
+            String[] parts = path.split("\\.");
+            if (parts.length == 1) {
+                entityGraph.addAttributeNodes(parts[0]);
+                continue;
+            }
+            Subgraph<?> subgraph = subgraphs.computeIfAbsent(parts[0], p -> entityGraph.addSubgraph(p));
+            StringBuilder prefix = new StringBuilder(parts[0]);
+            for (int i = 1; i < parts.length - 1; i++) {
+                prefix.append('.').append(parts[i]);
+                Subgraph<?> parent = subgraph;
+                String part = parts[i];
+                subgraph = subgraphs.computeIfAbsent(prefix.toString(), p -> parent.addSubgraph(part));
+            }
+            subgraph.addAttributeNodes(parts[parts.length - 1]);
+        }
+        return entityGraph;
+    }
+}
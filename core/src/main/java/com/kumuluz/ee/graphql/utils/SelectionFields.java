@@ -0,0 +1,106 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import io.leangen.graphql.execution.ResolutionEnvironment;
+
+import java.util.*;
+
+/**
+ * SelectionFields class - extracts selected field paths (used for projection and fetching) from the selection set
+ *
+ * Selection keys are inserted into a prefix tree of field names and the leaves of the tree are the minimal set of
+ * fields. Every key is visited once, so extraction is linear in the size of the selection.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+final class SelectionFields {
+
+    private SelectionFields() {
+    }
+
+    /**
+     * Returns fields selected under the path (for example "result" or "edges/node") or all selected fields, if path
+     * is null. Field names in the returned paths are separated with dots.
+     */
+    static List<String> get(ResolutionEnvironment resolutionEnvironment, String path) {
+        Set<String> keys = resolutionEnvironment.dataFetchingEnvironment.getSelectionSet().get().keySet();
+        return extract(keys, path);
+    }
+
+    static List<String> extract(Collection<String> keys, String path) {
+        String prefix = (path == null) ? null : path + "/";
+        Node root = new Node();
+        for (String key : keys) {
+            int start = 0;
+            if (prefix != null) {
+                if (!key.startsWith(prefix)) {
+                    continue;
+                }
+                start = prefix.length();
+            }
+            root.insert(key, start);
+        }
+
+        List<String> fields = new ArrayList<>();
+        root.collectLeaves(new StringBuilder(), fields);
+        return fields;
+    }
+
+    private static class Node {
+
+        private Map<String, Node> children;
+
+        void insert(String key, int start) {
+            Node node = this;
+            while (start < key.length()) {
+                int end = key.indexOf('/', start);
+                if (end < 0) {
+                    end = key.length();
+                }
+                if (node.children == null) {
+                    node.children = new LinkedHashMap<>();
+                }
+                node = node.children.computeIfAbsent(key.substring(start, end), name -> new Node());
+                start = end + 1;
+            }
+        }
+
+        void collectLeaves(StringBuilder path, List<String> leaves) {
+            if (children == null) {
+                if (path.length() > 0) {
+                    leaves.add(path.toString());
+                }
+                return;
+            }
+            int length = path.length();
+            for (Map.Entry<String, Node> child : children.entrySet()) {
+                if (length > 0) {
+                    path.append('.');
+                }
+                path.append(child.getKey());
+                child.getValue().collectLeaves(path, leaves);
+                path.setLength(length);
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.logging.Logger;
+
+/**
+ * SerializationFormat enum - request/response encodings supported by the GraphQL endpoint
+ *
+ * Binary formats are only available when the matching jackson-dataformat module is on the classpath. Line delimited
+ * formats are only used for responses.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public enum SerializationFormat {
+    JSON("application/json", null),
+    CBOR("application/cbor", "com.fasterxml.jackson.dataformat.cbor.CBORFactory"),
+    SMILE("application/x-jackson-smile", "com.fasterxml.jackson.dataformat.smile.SmileFactory"),
+    NDJSON("application/x-ndjson", null, true);
+
+    private static final Logger LOG = Logger.getLogger(SerializationFormat.class.getName());
+
+    private final String mediaType;
+    private final String factoryClassName;
+    private final boolean lineDelimited;
+    private volatile ObjectMapper objectMapper;
+    private volatile Boolean available;
+
+    SerializationFormat(String mediaType, String factoryClassName) {
+        this(mediaType, factoryClassName, false);
+    }
+
+    SerializationFormat(String mediaType, String factoryClassName, boolean lineDelimited) {
+        this.mediaType = mediaType;
+        this.factoryClassName = factoryClassName;
+        this.lineDelimited = lineDelimited;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public boolean isBinary() {
+        return factoryClassName != null;
+    }
+
+    /**
+     * Returns true, if elements of the root list are written as separate documents, one per line.
+     */
+    public boolean isLineDelimited() {
+        return lineDelimited;
+    }
+
+    public boolean isAvailable() {
+        if (available == null) {
+            if (factoryClassName == null) {
+                available = true;
+            } else {
+                try {
+                    Class.forName(factoryClassName, false, SerializationFormat.class.getClassLoader());
+                    available = true;
+                } catch (ClassNotFoundException e) {
+                    available = false;
+                }
+            }
+        }
+        return available;
+    }
+
+    public ObjectMapper getObjectMapper() {
+        if (objectMapper == null) {
+            synchronized (this) {
+                if (objectMapper == null) {
+                    objectMapper = createObjectMapper();
+                }
+            }
+        }
+        return objectMapper;
+    }
+
+    private ObjectMapper createObjectMapper() {
+        if (factoryClassName == null) {
+            return new ObjectMapper();
+        }
+        try {
+            JsonFactory factory = (JsonFactory) Class.forName(factoryClassName).getDeclaredConstructor().newInstance();
+            return new ObjectMapper(factory);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to create " + name() + " object mapper. Is the jackson-dataformat-" +
+                    name().toLowerCase() + " dependency present?", e);
+        }
+    }
+
+    /**
+     * Returns the format of the request body described by the Content-Type header or null, if the content type is
+     * not one of the supported (and available) formats.
+     */
+    public static SerializationFormat fromContentType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        String mediaType = stripParameters(contentType);
+        for (SerializationFormat format : values()) {
+            if (format.mediaType.equalsIgnoreCase(mediaType) && !format.lineDelimited) {
+                if (!format.isAvailable()) {
+                    LOG.warning("Received " + mediaType + " request, but the jackson-dataformat-" +
+                            format.name().toLowerCase() + " dependency is not present.");
+                    return null;
+                }
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the available format with the highest quality value in the Accept header or null, if none of them is
+     * supported. Formats with equal quality are preferred in the listed order and formats with q=0 are never returned.
+     */
+    public static SerializationFormat fromAccept(String accept) {
+        if (accept == null) {
+            return null;
+        }
+        SerializationFormat best = null;
+        double bestQuality = 0;
+        for (String acceptedType : accept.split(",")) {
+            String mediaType = stripParameters(acceptedType);
+            double quality = getQuality(acceptedType);
+            if (quality <= bestQuality) {
+                continue;
+            }
+            for (SerializationFormat format : values()) {
+                if (format.mediaType.equalsIgnoreCase(mediaType) && format.isAvailable()) {
+                    best = format;
+                    bestQuality = quality;
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the q parameter of a single Accept header element, 1 if it is missing and 0 if it is malformed.
+     */
+    private static double getQuality(String acceptedType) {
+        String[] parts = acceptedType.split(";");
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.length() > 1 && Character.toLowerCase(parameter.charAt(0)) == 'q' &&
+                    parameter.substring(1).trim().startsWith("=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(parameter.indexOf('=') + 1).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static String stripParameters(String mediaType) {
+        int index = mediaType.indexOf(';');
+        if (index >= 0) {
+            mediaType = mediaType.substring(0, index);
+        }
+        return mediaType.trim();
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import com.kumuluz.ee.graphql.classes.BulkResult;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests transaction handling of bulk mutations in {@link BulkProcessor}.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class BulkProcessorTest {
+
+    @Test
+    public void testCommit() {
+        Transaction transaction = new Transaction();
+        List<String> persisted = new ArrayList<>();
+
+        BulkResult<Integer> result = BulkProcessor.process(transaction.entityManager(), Arrays.asList("a", "bb"),
+                null, input -> {
+                    persisted.add(input);
+                    return input.length();
+                });
+
+        Assert.assertFalse(result.isRolledBack());
+        Assert.assertEquals(result.getSucceeded(), 2);
+        Assert.assertEquals(result.getItems().get(1).getResult(), Integer.valueOf(2));
+        Assert.assertEquals(persisted, Arrays.asList("a", "bb"));
+        Assert.assertEquals(transaction.events, Arrays.asList("begin", "flush", "commit"));
+    }
+
+    @Test
+    public void testInvalidInputsAreSkipped() {
+        Transaction transaction = new Transaction();
+        List<String> persisted = new ArrayList<>();
+
+        BulkResult<Integer> result = BulkProcessor.process(transaction.entityManager(), Arrays.asList("a", "", "c"),
+                input -> {
+                    if (input.isEmpty()) {
+                        throw new IllegalArgumentException("Name is required.");
+                    }
+                }, input -> {
+                    persisted.add(input);
+                    return input.length();
+                });
+
+        Assert.assertFalse(result.isRolledBack());
+        Assert.assertEquals(result.getSucceeded(), 2);
+        Assert.assertEquals(result.getItems().get(1).getError(), "Name is required.");
+        Assert.assertNull(result.getItems().get(1).getResult());
+        Assert.assertEquals(persisted, Arrays.asList("a", "c"));
+        Assert.assertEquals(transaction.events, Arrays.asList("begin", "flush", "commit"));
+    }
+
+    @Test
+    public void testFailureRollsBackWholeBulk() {
+        Transaction transaction = new Transaction();
+
+        BulkResult<Integer> result = BulkProcessor.process(transaction.entityManager(),
+                Arrays.asList("a", "b", "fail", "d"), null, input -> {
+                    if (input.equals("fail")) {
+                        throw new PersistenceException("Constraint violated.");
+                    }
+                    return input.length();
+                });
+
+        Assert.assertTrue(result.isRolledBack());
+        Assert.assertEquals(result.getSucceeded(), 0);
+        Assert.assertEquals(result.getFailed(), 4);
+        Assert.assertEquals(result.getItems().get(0).getError(), "Rolled back: Constraint violated.");
+        Assert.assertNull(result.getItems().get(0).getResult());
+        Assert.assertEquals(result.getItems().get(2).getError(), "Constraint violated.");
+        Assert.assertEquals(result.getItems().get(3).getError(), "Not executed: bulk mutation was rolled back.");
+        Assert.assertEquals(transaction.events, Arrays.asList("begin", "rollback"));
+    }
+
+    @Test
+    public void testFailureMarksCallersTransactionForRollback() {
+        Transaction transaction = new Transaction();
+        transaction.active = true;
+
+        BulkResult<Object> result = BulkProcessor.process(transaction.entityManager(), Collections.singletonList("a"),
+                null, input -> {
+                    throw new PersistenceException("Constraint violated.");
+                });
+
+        Assert.assertTrue(result.isRolledBack());
+        Assert.assertEquals(transaction.events, Collections.singletonList("setRollbackOnly"));
+    }
+
+    @Test
+    public void testBatchesAreFlushedAndCleared() {
+        Transaction transaction = new Transaction();
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            inputs.add("item" + i);
+        }
+
+        BulkProcessor.process(transaction.entityManager(), inputs, null, input -> input);
+
+        // default batch size is 50
+        Assert.assertEquals(transaction.events, Arrays.asList("begin", "flush", "clear", "flush", "clear", "flush",
+                "commit"));
+    }
+
+    @Test
+    public void testCallersEntityManagerIsNotCleared() {
+        Transaction transaction = new Transaction();
+        transaction.active = true;
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            inputs.add("item" + i);
+        }
+
+        BulkProcessor.process(transaction.entityManager(), inputs, null, input -> input);
+
+        Assert.assertEquals(transaction.events, Arrays.asList("flush", "flush", "flush"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testJtaFailureIsRethrownWithoutRegistry() {
+        Transaction transaction = new Transaction();
+        transaction.jta = true;
+
+        // the operation's exception does not mark the JTA transaction for rollback and no registry is bound in tests
+        BulkProcessor.process(transaction.entityManager(), Collections.singletonList("a"), null, input -> {
+            throw new IllegalArgumentException("Invalid state.");
+        });
+    }
+
+    /**
+     * Resource local (or JTA) transaction, which records calls to itself and to its entity manager.
+     */
+    private static class Transaction {
+
+        private final List<String> events = new ArrayList<>();
+        private boolean active;
+        private boolean jta;
+
+        private EntityManager entityManager() {
+            EntityTransaction transaction = (EntityTransaction) Proxy.newProxyInstance(
+                    BulkProcessorTest.class.getClassLoader(), new Class<?>[]{EntityTransaction.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "isActive":
+                                return active;
+                            case "begin":
+                                active = true;
+                                break;
+                            case "commit":
+                            case "rollback":
+                                active = false;
+                                break;
+                            case "setRollbackOnly":
+                                break;
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                        events.add(method.getName());
+                        return null;
+                    });
+            return (EntityManager) Proxy.newProxyInstance(BulkProcessorTest.class.getClassLoader(),
+                    new Class<?>[]{EntityManager.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "getTransaction":
+                                if (jta) {
+                                    throw new IllegalStateException("JTA entity manager");
+                                }
+                                return transaction;
+                            case "isJoinedToTransaction":
+                                return jta;
+                            case "flush":
+                            case "clear":
+                                events.add(method.getName());
+                                return null;
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kumuluz.ee.graphql.execution.ExecutorExecutionStrategy;
+import com.kumuluz.ee.graphql.execution.StreamedList;
+import com.kumuluz.ee.graphql.execution.StreamingExecutionStrategy;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.Scalars;
+import graphql.execution.ExecutionStrategy;
+import graphql.schema.*;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Tests writing of results with lists streamed by {@link StreamingExecutionStrategy}.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class ExecutionResultWriterTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void testStreamedElementErrorsAreWrittenAfterData() throws IOException {
+        Rows rows = new Rows(row("ana", "A1"), row("bor", null), row("cene", "C3"));
+
+        ExecutionResult result = execute(new StreamingExecutionStrategy(), rows, "{ items { name code } }");
+
+        Object items = ((Map<?, ?>) result.getData()).get("items");
+        Assert.assertTrue(items instanceof StreamedList);
+        // elements are read while the response is being written
+        Assert.assertEquals(rows.read, 0);
+
+        JsonNode response = write(result);
+
+        Assert.assertEquals(fieldNames(response), Arrays.asList("data", "errors"));
+        JsonNode data = response.get("data").get("items");
+        Assert.assertEquals(data.size(), 3);
+        Assert.assertEquals(data.get(0).get("name").asText(), "ana");
+        Assert.assertTrue(data.get(1).isNull());
+        Assert.assertEquals(data.get(2).get("code").asText(), "C3");
+
+        JsonNode errors = response.get("errors");
+        Assert.assertEquals(errors.size(), 1);
+        Assert.assertEquals(errors.get(0).get("path").toString(), "[\"items\",1,\"code\"]");
+        Assert.assertTrue(rows.closed);
+    }
+
+    @Test
+    public void testNonNullElementsAreNotStreamed() {
+        Rows rows = new Rows(row("ana", "A1"), row("bor", null));
+
+        ExecutionResult result = execute(new StreamingExecutionStrategy(), rows, "{ strictItems { name code } }");
+
+        // a null element of [Item!] nulls the whole list
+        Assert.assertNull(((Map<?, ?>) result.getData()).get("strictItems"));
+        Assert.assertEquals(result.getErrors().size(), 1);
+        Assert.assertTrue(rows.closed);
+    }
+
+    @Test
+    public void testStreamingIsOptional() throws IOException {
+        Rows rows = new Rows(row("ana", "A1"), row("bor", null));
+
+        ExecutionResult result = execute(new ExecutorExecutionStrategy(Runnable::run), rows,
+                "{ items { name code } }");
+
+        Object items = ((Map<?, ?>) result.getData()).get("items");
+        Assert.assertFalse(items instanceof StreamedList);
+        Assert.assertEquals(rows.read, 2);
+        Assert.assertEquals(result.getErrors().size(), 1);
+
+        JsonNode response = write(result);
+
+        Assert.assertEquals(response.get("data").get("items").get(0).get("name").asText(), "ana");
+        Assert.assertTrue(response.get("data").get("items").get(1).isNull());
+        Assert.assertEquals(response.get("errors").size(), 1);
+    }
+
+    @Test
+    public void testStreamIsClosedWhenWritingFails() {
+        // a null row stands for a failure of the underlying cursor
+        Rows rows = new Rows(row("ana", "A1"), null, row("cene", "C3"));
+
+        ExecutionResult result = execute(new StreamingExecutionStrategy(), rows, "{ items { name } }");
+
+        try {
+            write(result);
+            Assert.fail("Writing should fail.");
+        } catch (IllegalStateException | IOException e) {
+            Assert.assertEquals(e.getMessage(), "Connection lost.");
+        }
+        Assert.assertTrue(rows.closed);
+    }
+
+    @Test
+    public void testResultStreamIsReadOnce() {
+        Rows rows = new Rows(row("ana", "A1"), row("bor", "B2"));
+        ResultStream<Object> stream = new ResultStream<>(() -> rows, () -> 2);
+
+        Assert.assertTrue(stream.iterator().hasNext());
+        try {
+            stream.iterator();
+            Assert.fail("Second iteration should fail.");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(rows.closed);
+        }
+    }
+
+    private static ExecutionResult execute(ExecutionStrategy strategy, Rows rows, String query) {
+        GraphQLObjectType item = GraphQLObjectType.newObject()
+                .name("Item")
+                .field(GraphQLFieldDefinition.newFieldDefinition()
+                        .name("name")
+                        .type(Scalars.GraphQLString))
+                .field(GraphQLFieldDefinition.newFieldDefinition()
+                        .name("code")
+                        .type(GraphQLNonNull.nonNull(Scalars.GraphQLString)))
+                .build();
+        GraphQLObjectType queryType = GraphQLObjectType.newObject()
+                .name("Query")
+                .field(GraphQLFieldDefinition.newFieldDefinition()
+                        .name("items")
+                        .type(GraphQLList.list(item)))
+                .field(GraphQLFieldDefinition.newFieldDefinition()
+                        .name("strictItems")
+                        .type(GraphQLList.list(GraphQLNonNull.nonNull(item))))
+                .build();
+
+        DataFetcher<ResultStream<Object>> fetcher = environment -> new ResultStream<>(() -> rows, () -> rows.size);
+        GraphQLCodeRegistry codeRegistry = GraphQLCodeRegistry.newCodeRegistry()
+                .dataFetcher(FieldCoordinates.coordinates("Query", "items"), fetcher)
+                .dataFetcher(FieldCoordinates.coordinates("Query", "strictItems"), fetcher)
+                .build();
+        GraphQLSchema schema = GraphQLSchema.newSchema()
+                .query(queryType)
+                .codeRegistry(codeRegistry)
+                .build();
+
+        return GraphQL.newGraphQL(schema)
+                .queryExecutionStrategy(strategy)
+                .build()
+                .execute(query);
+    }
+
+    private static JsonNode write(ExecutionResult result) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = MAPPER.getFactory().createGenerator(out)) {
+            ExecutionResultWriter.write(generator, result);
+        }
+        return MAPPER.readTree(out.toByteArray());
+    }
+
+    private static List<String> fieldNames(JsonNode node) {
+        List<String> names = new ArrayList<>();
+        node.fieldNames().forEachRemaining(names::add);
+        return names;
+    }
+
+    private static Map<String, Object> row(String name, String code) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("name", name);
+        row.put("code", code);
+        return row;
+    }
+
+    /**
+     * Cursor over rows, which records how many rows have been read and whether it has been closed.
+     */
+    private static class Rows implements Iterator<Object>, AutoCloseable {
+
+        private final Iterator<Map<String, Object>> rows;
+        private final int size;
+        private int read;
+        private boolean closed;
+
+        @SafeVarargs
+        private Rows(Map<String, Object>... rows) {
+            this.rows = Arrays.asList(rows).iterator();
+            this.size = rows.length;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !closed && rows.hasNext();
+        }
+
+        @Override
+        public Object next() {
+            Map<String, Object> row = rows.next();
+            if (row == null) {
+                throw new IllegalStateException("Connection lost.");
+            }
+            read++;
+            return row;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import com.kumuluz.ee.graphql.classes.*;
+import com.kumuluz.ee.rest.enums.FilterOperation;
+import com.kumuluz.ee.rest.enums.OrderDirection;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+/**
+ * Compares {@link IndexedCollection} queries with {@link ListProcessor} on the same elements.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class IndexedCollectionTest {
+
+    private final List<Item> items = createItems(1000);
+    private final IndexedCollection<Item> collection = createCollection(items);
+
+    @Test
+    public void testSelectiveRange() {
+        assertSameAsList(null, filter("score", FilterOperation.GT, "95"), 0, 50);
+        assertSameAsList(null, filter("score", FilterOperation.LTE, "3"), 0, 50);
+    }
+
+    @Test
+    public void testUnselectiveRangeFallsBackToScan() {
+        assertSameAsList(null, filter("score", FilterOperation.GTE, "10"), 0, 50);
+        assertSameAsList(null, filter("score", FilterOperation.LT, "90"), 100, 50);
+    }
+
+    @Test
+    public void testSortByIndexedField() {
+        assertSameAsList(sort("score", OrderDirection.ASC), null, 0, 20);
+        assertSameAsList(sort("score", OrderDirection.DESC), null, 0, 20);
+        // null values are last when ascending and first when descending
+        assertSameAsList(sort("score", OrderDirection.ASC), null, 980, 20);
+        assertSameAsList(sort("score", OrderDirection.DESC), null, 0, 1000);
+        assertSameAsList(sort("score", OrderDirection.ASC), filter("name", FilterOperation.EQ, "eva"), 10, 20);
+        assertSameAsList(sort("score", OrderDirection.DESC), filter("score", FilterOperation.GT, "30"), 0, 100);
+    }
+
+    @Test
+    public void testSortByOtherField() {
+        assertSameAsList(sort("name", OrderDirection.ASC), filter("score", FilterOperation.LT, "5"), 0, 20);
+        assertSameAsList(sort("id", OrderDirection.DESC), filter("name", FilterOperation.IN, "[ana,bor]"), 5, 20);
+    }
+
+    @Test
+    public void testUpdateAndRemove() {
+        List<Item> copy = new ArrayList<>(items.subList(0, 100));
+        IndexedCollection<Item> small = createCollection(copy);
+
+        Item item = copy.get(10);
+        item.score = -1;
+        small.update(item);
+        small.remove(copy.get(20));
+        copy.remove(20);
+
+        Sort sort = sort("score", OrderDirection.ASC);
+        Assert.assertEquals(small.query(sort, null, 0, 5).getItems(),
+                ListProcessor.process(copy, sort, null, 0, 5).getItems());
+        Assert.assertEquals(small.query(sort, null, 0, 5).getItems().get(0), item);
+    }
+
+    private void assertSameAsList(Sort sort, Filter filter, int offset, int limit) {
+        ListProcessor.Page<Item> expected = ListProcessor.process(items, sort, filter, offset, limit);
+        ListProcessor.Page<Item> actual = collection.query(sort, filter, offset, limit);
+
+        Assert.assertEquals(actual.getItems(), expected.getItems());
+        Assert.assertEquals(actual.getTotal(), expected.getTotal());
+    }
+
+    private static IndexedCollection<Item> createCollection(List<Item> items) {
+        IndexedCollection<Item> collection = IndexedCollection.builder(Item.class)
+                .hashIndex("name")
+                .sortedIndex("score")
+                .build();
+        collection.addAll(items);
+        return collection;
+    }
+
+    private static List<Item> createItems(int size) {
+        String[] names = {"ana", "bor", "cene", "dita", "eva"};
+        Random random = new Random(7);
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Integer score = (random.nextInt(20) == 0) ? null : random.nextInt(100);
+            items.add(new Item(i, names[random.nextInt(names.length)], score));
+        }
+        return items;
+    }
+
+    private static Sort sort(String field, OrderDirection order) {
+        SortField sortField = new SortField();
+        sortField.setField(field);
+        sortField.setOrder(order);
+        Sort sort = new Sort();
+        sort.setFields(Collections.singletonList(sortField));
+        return sort;
+    }
+
+    private static Filter filter(String field, FilterOperation op, String value) {
+        FilterField filterField = new FilterField();
+        filterField.setField(field);
+        filterField.setOp(op);
+        filterField.setValue(value);
+        filterField.setType(FilterType.INTEGER);
+        Filter filter = new Filter();
+        filter.setFields(Collections.singletonList(filterField));
+        return filter;
+    }
+
+    public static class Item {
+        private final Integer id;
+        private final String name;
+        private Integer score;
+
+        public Item(Integer id, String name, Integer score) {
+            this.id = id;
+            this.name = name;
+            this.score = score;
+        }
+
+        public Integer getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Integer getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return "Item" + id;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import com.kumuluz.ee.graphql.execution.ExecutorExecutionStrategy;
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.execution.instrumentation.dataloader.DataLoaderDispatcherInstrumentation;
+import graphql.schema.DataFetchingEnvironment;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import org.dataloader.DataLoaderRegistry;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaQuery;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Tests grouping, chunking and batching of {@link JpaBatchLoader} queries.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class JpaBatchLoaderTest {
+
+    private static final String CHUNK_SIZE = "kumuluzee.graphql.jpa.batch.chunk-size";
+
+    @Test
+    public void testLoadGrouped() {
+        Lecturer first = new Lecturer(1, null);
+        Lecturer second = new Lecturer(2, null);
+        FakeEntityManager em = new FakeEntityManager(
+                new Subject("math", first), new Subject("physics", second), new Subject("chemistry", first));
+
+        List<List<Subject>> subjects = JpaBatchLoader.loadGrouped(em.entityManager(), Subject.class, "lecturer.id",
+                Arrays.asList(1, 3, 2, 1));
+
+        Assert.assertEquals(subjects.size(), 4);
+        Assert.assertEquals(names(subjects.get(0)), Arrays.asList("math", "chemistry"));
+        Assert.assertEquals(subjects.get(1), Collections.emptyList());
+        Assert.assertEquals(names(subjects.get(2)), Collections.singletonList("physics"));
+        Assert.assertEquals(names(subjects.get(3)), Arrays.asList("math", "chemistry"));
+        Assert.assertEquals(em.queries, Collections.singletonList(Arrays.asList(1, 3, 2)));
+    }
+
+    @Test
+    public void testLoadUnique() {
+        FakeEntityManager em = new FakeEntityManager(new Assistant(1, "ana"), new Assistant(2, "bor"));
+
+        List<Assistant> assistants = JpaBatchLoader.loadUnique(em.entityManager(), Assistant.class, "id",
+                Arrays.asList(2, 5, 2));
+
+        Assert.assertEquals(assistants.size(), 3);
+        Assert.assertEquals(assistants.get(0).getName(), "bor");
+        Assert.assertNull(assistants.get(1));
+        Assert.assertEquals(assistants.get(2).getName(), "bor");
+        Assert.assertEquals(em.queries, Collections.singletonList(Arrays.asList(2, 5)));
+    }
+
+    @Test
+    public void testKeysAreChunked() {
+        List<Object> entities = new ArrayList<>();
+        List<Object> keys = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            entities.add(new Assistant(i, "assistant" + i));
+            keys.add(i);
+        }
+        FakeEntityManager em = new FakeEntityManager(entities.toArray());
+
+        System.setProperty(CHUNK_SIZE, "2");
+        try {
+            List<Assistant> assistants = JpaBatchLoader.loadUnique(em.entityManager(), Assistant.class, "id", keys);
+
+            Assert.assertEquals(assistants, entities);
+        } finally {
+            System.clearProperty(CHUNK_SIZE);
+        }
+        Assert.assertEquals(em.queries, Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3, 4),
+                Collections.singletonList(5)));
+    }
+
+    @Test
+    public void testBatchingWithExecutorExecutionStrategy() {
+        List<Object> entities = new ArrayList<>();
+        List<Lecturer> lecturers = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            Lecturer lecturer = new Lecturer(i, i);
+            lecturers.add(lecturer);
+            if (i % 4 != 0) {
+                entities.add(new Subject("subject" + i, lecturer));
+            }
+            if (i <= 3) {
+                entities.add(new Assistant(i, "assistant" + i));
+            }
+        }
+        FakeEntityManager fake = new FakeEntityManager(entities.toArray());
+        EntityManager em = fake.entityManager();
+
+        RuntimeWiring wiring = RuntimeWiring.newRuntimeWiring()
+                .type("Query", type -> type.dataFetcher("lecturers", env -> lecturers))
+                .type("Lecturer", type -> type
+                        .dataFetcher("subjects", env -> JpaBatchLoader.loadMany(registry(env), em, Subject.class,
+                                "lecturer.id", ((Lecturer) env.getSource()).getId()))
+                        .dataFetcher("assistant", env -> JpaBatchLoader.loadOne(registry(env), em, Assistant.class,
+                                "id", ((Lecturer) env.getSource()).getAssistantId())))
+                .build();
+        GraphQLSchema schema = new SchemaGenerator().makeExecutableSchema(new SchemaParser().parse(
+                "type Query { lecturers: [Lecturer] }\n" +
+                "type Lecturer { id: Int subjects: [Subject] assistant: Assistant }\n" +
+                "type Subject { name: String }\n" +
+                "type Assistant { name: String }"), wiring);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            GraphQL graphQL = GraphQL.newGraphQL(schema)
+                    .queryExecutionStrategy(new ExecutorExecutionStrategy(executor))
+                    .instrumentation(new DataLoaderDispatcherInstrumentation())
+                    .build();
+            ExecutionResult result = graphQL.execute(ExecutionInput.newExecutionInput()
+                    .query("{ lecturers { id subjects { name } assistant { name } } }")
+                    .dataLoaderRegistry(new DataLoaderRegistry())
+                    .build());
+
+            Assert.assertEquals(result.getErrors(), Collections.emptyList());
+            Map<String, List<Map<String, Object>>> data = result.getData();
+            List<Map<String, Object>> resolved = data.get("lecturers");
+            Assert.assertEquals(resolved.size(), 8);
+            for (int i = 1; i <= 8; i++) {
+                Map<String, Object> lecturer = resolved.get(i - 1);
+                Assert.assertEquals(lecturer.get("id"), i);
+                Assert.assertEquals(lecturer.get("subjects"), (i % 4 != 0)
+                        ? Collections.singletonList(Collections.singletonMap("name", "subject" + i))
+                        : Collections.emptyList());
+                Assert.assertEquals(lecturer.get("assistant"), (i <= 3)
+                        ? Collections.singletonMap("name", "assistant" + i)
+                        : null);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // one query per loader, never two at the same time on the shared entity manager
+        Assert.assertEquals(fake.queries.size(), 2);
+        Assert.assertFalse(fake.concurrentUse.get());
+    }
+
+    private static DataLoaderRegistry registry(DataFetchingEnvironment env) {
+        return env.getDataLoaderRegistry();
+    }
+
+    private static List<String> names(List<Subject> subjects) {
+        return subjects.stream().map(Subject::getName).collect(Collectors.toList());
+    }
+
+    /**
+     * Entity manager that evaluates IN queries built by {@link JpaBatchLoader} against a list of entities and is not
+     * thread-safe (overlapping queries are recorded).
+     */
+    private static class FakeEntityManager {
+
+        private final List<Object> entities;
+        private final List<List<Object>> queries = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicBoolean concurrentUse = new AtomicBoolean();
+
+        FakeEntityManager(Object... entities) {
+            this.entities = Arrays.asList(entities);
+        }
+
+        EntityManager entityManager() {
+            return JpaBatchLoaderTest.proxy(EntityManager.class, (method, args) -> {
+                switch (method.getName()) {
+                    case "getCriteriaBuilder":
+                        return JpaBatchLoaderTest.proxy(method.getReturnType(), (m, a) -> new QueryHandler().query());
+                    case "createQuery":
+                        QueryHandler handler = (QueryHandler) Proxy.getInvocationHandler(args[0]);
+                        return JpaBatchLoaderTest.proxy(method.getReturnType(), (m, a) -> execute(handler));
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        }
+
+        private List<Object[]> execute(QueryHandler query) {
+            if (running.incrementAndGet() > 1) {
+                concurrentUse.set(true);
+            }
+            try {
+                // widens the window, in which an unsynchronized second query would overlap
+                Thread.sleep(20);
+
+                queries.add(new ArrayList<>(query.values));
+                List<Object[]> rows = new ArrayList<>();
+                for (Object entity : entities) {
+                    if (query.entityClass.isInstance(entity)) {
+                        Object key = PropertyAccessor.of(entity.getClass(), query.path).get(entity);
+                        if (query.values.contains(key)) {
+                            rows.add(new Object[]{key, entity});
+                        }
+                    }
+                }
+                return rows;
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Records the entity class, key path and key values of a criteria query.
+     */
+    private static class QueryHandler implements InvocationHandler {
+
+        private Class<?> entityClass;
+        private String path;
+        private Collection<?> values;
+
+        CriteriaQuery<?> query() {
+            return (CriteriaQuery<?>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{CriteriaQuery.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "from":
+                    entityClass = (Class<?>) args[0];
+                    return path(method.getReturnType(), null);
+                case "multiselect":
+                case "where":
+                    return proxy;
+                default:
+                    return handleObjectMethod(proxy, method, args);
+            }
+        }
+
+        private Object path(Class<?> type, String name) {
+            return JpaBatchLoaderTest.proxy(type, (method, args) -> {
+                switch (method.getName()) {
+                    case "get":
+                        String part = (String) args[0];
+                        return path(method.getReturnType(), (name == null) ? part : name + "." + part);
+                    case "in":
+                        path = name;
+                        values = (Collection<?>) args[0];
+                        return JpaBatchLoaderTest.proxy(method.getReturnType(), (m, a) -> null);
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        }
+    }
+
+    private interface Handler {
+        Object invoke(Method method, Object[] args) throws Exception;
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(JpaBatchLoaderTest.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> (method.getDeclaringClass() == Object.class)
+                        ? handleObjectMethod(proxy, method, args)
+                        : handler.invoke(method, args)));
+    }
+
+    private static Object handleObjectMethod(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return proxy.getClass().getInterfaces()[0].getSimpleName();
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    public static class Lecturer {
+
+        private final Integer id;
+        private final Integer assistantId;
+
+        Lecturer(Integer id, Integer assistantId) {
+            this.id = id;
+            this.assistantId = assistantId;
+        }
+
+        public Integer getId() {
+            return id;
+        }
+
+        public Integer getAssistantId() {
+            return assistantId;
+        }
+    }
+
+    public static class Subject {
+
+        private final String name;
+        private final Lecturer lecturer;
+
+        Subject(String name, Lecturer lecturer) {
+            this.name = name;
+            this.lecturer = lecturer;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Lecturer getLecturer() {
+            return lecturer;
+        }
+    }
+
+    public static class Assistant {
+
+        private final Integer id;
+        private final String name;
+
+        Assistant(Integer id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public Integer getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
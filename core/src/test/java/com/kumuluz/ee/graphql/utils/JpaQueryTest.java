@@ -0,0 +1,181 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import com.kumuluz.ee.graphql.classes.Filter;
+import com.kumuluz.ee.graphql.classes.FilterField;
+import com.kumuluz.ee.graphql.classes.FilterType;
+import com.kumuluz.ee.rest.enums.FilterOperation;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Root;
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Tests splitting of large IN filters into chunks by {@link JpaQuery}.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class JpaQueryTest {
+
+    private static final Map<String, Class<?>> ATTRIBUTE_TYPES = new HashMap<>();
+
+    static {
+        ATTRIBUTE_TYPES.put("id", long.class);
+        ATTRIBUTE_TYPES.put("name", String.class);
+        ATTRIBUTE_TYPES.put("lecturer", Object.class);
+        ATTRIBUTE_TYPES.put("lecturer.id", Integer.class);
+    }
+
+    @Test
+    public void testInChunksAreCombinedWithOr() {
+        String predicate = JpaQuery.largeInPredicate(criteriaBuilder(), root(), field("id", FilterOperation.IN,
+                FilterType.INTEGER, "[1,2,2,3,4,1,5]"), 2).toString();
+
+        Assert.assertEquals(predicate, "or(id.in([1, 2]), id.in([3, 4]), id.in([5]))");
+    }
+
+    @Test
+    public void testNinChunksAreCombinedWithAnd() {
+        String predicate = JpaQuery.largeInPredicate(criteriaBuilder(), root(), field("lecturer.id",
+                FilterOperation.NIN, FilterType.INTEGER, "[7,8,9]"), 2).toString();
+
+        Assert.assertEquals(predicate, "and(not(lecturer.id.in([7, 8])), not(lecturer.id.in([9])))");
+    }
+
+    @Test
+    public void testIgnoreCaseChunks() {
+        String predicate = JpaQuery.largeInPredicate(criteriaBuilder(), root(), field("name", FilterOperation.NINIC,
+                FilterType.STRING, "[Ana,ana,Bor]"), 10).toString();
+
+        Assert.assertEquals(predicate, "and(not(lower(name).in([ana, bor])))");
+    }
+
+    @Test
+    public void testLargeInFiltersAreNotPassedToQuery() {
+        FilterField small = field("name", FilterOperation.IN, FilterType.STRING, "[ana,bor]");
+        FilterField large = field("id", FilterOperation.IN, FilterType.INTEGER, values(JpaQuery.getChunkSize() + 1));
+
+        JpaQuery<Object> query = JpaQuery.of(Object.class, null, null, filter(small, large), false);
+
+        Assert.assertEquals(query.getFilter().getFields().size(), 1);
+        Assert.assertSame(query.getFilter().getFields().get(0), small);
+        Assert.assertEquals(query.getQueryParameters().getFilters().size(), 1);
+        // estimators see all filters
+        Assert.assertEquals(query.getFullQueryParameters().getFilters().size(), 2);
+    }
+
+    @Test
+    public void testSmallFiltersAreKept() {
+        Filter filter = filter(field("id", FilterOperation.IN, FilterType.INTEGER, values(JpaQuery.getChunkSize())));
+
+        JpaQuery<Object> query = JpaQuery.of(Object.class, null, null, filter, false);
+
+        Assert.assertSame(query.getFilter(), filter);
+        Assert.assertSame(query.getFullQueryParameters(), query.getQueryParameters());
+    }
+
+    private static String values(int count) {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            values.add(String.valueOf(i));
+        }
+        return "[" + String.join(",", values) + "]";
+    }
+
+    private static FilterField field(String name, FilterOperation op, FilterType type, String value) {
+        FilterField field = new FilterField();
+        field.setField(name);
+        field.setOp(op);
+        field.setType(type);
+        field.setValue(value);
+        return field;
+    }
+
+    private static Filter filter(FilterField... fields) {
+        Filter filter = new Filter();
+        filter.setFields(Arrays.asList(fields));
+        return filter;
+    }
+
+    private static CriteriaBuilder criteriaBuilder() {
+        return (CriteriaBuilder) node(CriteriaBuilder.class, null, null);
+    }
+
+    private static Root<?> root() {
+        return (Root<?>) node(Root.class, null, null);
+    }
+
+    /**
+     * Returns a criteria object, whose string representation describes the expression it was built from.
+     */
+    private static Object node(Class<?> type, String description, Class<?> javaType) {
+        return Proxy.newProxyInstance(JpaQueryTest.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "toString":
+                            return description;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "getJavaType":
+                            return javaType;
+                        case "get":
+                            String path = (description == null) ? (String) args[0] : description + "." + args[0];
+                            return node(method.getReturnType(), path, ATTRIBUTE_TYPES.get(path));
+                        case "in":
+                            return node(method.getReturnType(), description + ".in(" + args[0] + ")", Boolean.class);
+                        default:
+                            return node(method.getReturnType(), method.getName() + "(" + describe(args) + ")",
+                                    method.getReturnType());
+                    }
+                });
+    }
+
+    private static String describe(Object[] args) {
+        List<String> descriptions = new ArrayList<>();
+        for (Object arg : args) {
+            if (arg != null && arg.getClass().isArray()) {
+                for (int i = 0; i < Array.getLength(arg); i++) {
+                    descriptions.add(String.valueOf(Array.get(arg, i)));
+                }
+            } else if (arg instanceof Collection) {
+                descriptions.add(((Collection<?>) arg).stream().map(String::valueOf)
+                        .collect(Collectors.joining(", ", "[", "]")));
+            } else {
+                descriptions.add(String.valueOf(arg));
+            }
+        }
+        return String.join(", ", descriptions);
+    }
+}
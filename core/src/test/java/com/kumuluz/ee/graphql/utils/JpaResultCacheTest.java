@@ -0,0 +1,226 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import com.kumuluz.ee.graphql.classes.Filter;
+import com.kumuluz.ee.graphql.classes.FilterField;
+import com.kumuluz.ee.graphql.classes.FilterType;
+import com.kumuluz.ee.rest.enums.FilterOperation;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.metamodel.*;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+/**
+ * Tests dependencies and invalidation of pages cached by {@link JpaResultCache}.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class JpaResultCacheTest {
+
+    @AfterMethod
+    public void clear() {
+        JpaResultCache.clear();
+    }
+
+    @Test
+    public void testInvalidateDependencies() {
+        put(Student.class, key("page"), Student.class, Lecturer.class);
+
+        JpaResultCache.invalidate(Room.class);
+        Assert.assertNotNull(JpaResultCache.get(Student.class, key("page")));
+
+        JpaResultCache.invalidate(Lecturer.class);
+        Assert.assertNull(JpaResultCache.get(Student.class, key("page")));
+    }
+
+    @Test
+    public void testInvalidateSubclass() {
+        put(Person.class, key("people"), Person.class);
+        put(Student.class, key("students"), Student.class);
+        put(Lecturer.class, key("lecturers"), Lecturer.class);
+
+        // a changed student is also a changed person, but not the other way around
+        JpaResultCache.invalidate(Student.class);
+        Assert.assertNull(JpaResultCache.get(Person.class, key("people")));
+        Assert.assertNull(JpaResultCache.get(Student.class, key("students")));
+        Assert.assertNotNull(JpaResultCache.get(Lecturer.class, key("lecturers")));
+    }
+
+    @Test
+    public void testPageReadBeforeInvalidationIsNotCached() {
+        Set<Class<?>> dependencies = new HashSet<>(Arrays.asList(Student.class, Lecturer.class));
+        long generation = JpaResultCache.generation(dependencies);
+
+        JpaResultCache.invalidate(Lecturer.class);
+        JpaResultCache.put(Student.class, key("page"), dependencies, generation, entry());
+        Assert.assertNull(JpaResultCache.get(Student.class, key("page")));
+
+        JpaResultCache.put(Student.class, key("page"), dependencies, JpaResultCache.generation(dependencies), entry());
+        Assert.assertNotNull(JpaResultCache.get(Student.class, key("page")));
+    }
+
+    @Test
+    public void testKeyIgnoresFieldOrder() {
+        Assert.assertEquals(
+                JpaResultCache.key(0, 10, null, null, Arrays.asList("name", "id"), CountMode.EXACT),
+                JpaResultCache.key(0, 10, null, null, Arrays.asList("id", "name"), CountMode.EXACT));
+        Assert.assertNotEquals(
+                JpaResultCache.key(0, 10, null, null, Arrays.asList("id"), CountMode.EXACT),
+                JpaResultCache.key(10, 10, null, null, Arrays.asList("id"), CountMode.EXACT));
+    }
+
+    @Test
+    public void testKeyOfValuesWithSeparators() {
+        Filter one = filter(field("a", "b:c,EQ,STRING,d"));
+        Filter two = filter(field("a", "b"), field("c", "d"));
+
+        Assert.assertNotEquals(
+                JpaResultCache.key(0, 10, null, one, null, CountMode.EXACT),
+                JpaResultCache.key(0, 10, null, two, null, CountMode.EXACT));
+    }
+
+    @Test
+    public void testDependenciesFollowAssociations() {
+        Map<Class<?>, Map<String, Type<?>>> model = new HashMap<>();
+        Map<String, Type<?>> student = new HashMap<>();
+        Map<String, Type<?>> address = new HashMap<>();
+        Map<String, Type<?>> lecturer = new HashMap<>();
+        model.put(Student.class, student);
+        model.put(Address.class, address);
+        model.put(Lecturer.class, lecturer);
+        student.put("name", type(String.class, null, false));
+        student.put("address", type(Address.class, address, false));
+        student.put("lecturers", type(Lecturer.class, lecturer, true));
+        address.put("room", type(Room.class, new HashMap<>(), true));
+        lecturer.put("name", type(String.class, null, false));
+
+        Set<Class<?>> dependencies = JpaResultCache.dependencies(entityManager(model), Student.class,
+                Arrays.asList("name", "address.room", "unknown.field"), null, null);
+
+        Assert.assertEquals(dependencies, new HashSet<>(Arrays.asList(Student.class, Room.class)));
+
+        dependencies = JpaResultCache.dependencies(entityManager(model), Student.class,
+                Collections.singletonList("lecturers.name"), null, null);
+
+        Assert.assertEquals(dependencies, new HashSet<>(Arrays.asList(Student.class, Lecturer.class)));
+    }
+
+    private static List<Object> key(String name) {
+        return Collections.singletonList(name);
+    }
+
+    private static FilterField field(String name, String value) {
+        FilterField field = new FilterField();
+        field.setField(name);
+        field.setOp(FilterOperation.EQ);
+        field.setType(FilterType.STRING);
+        field.setValue(value);
+        return field;
+    }
+
+    private static Filter filter(FilterField... fields) {
+        Filter filter = new Filter();
+        filter.setFields(Arrays.asList(fields));
+        return filter;
+    }
+
+    private static void put(Class<?> entityClass, List<Object> key, Class<?>... dependencies) {
+        Set<Class<?>> set = new HashSet<>(Arrays.asList(dependencies));
+        JpaResultCache.put(entityClass, key, set, JpaResultCache.generation(set), entry());
+    }
+
+    private static JpaResultCache.Entry entry() {
+        return new JpaResultCache.Entry(Collections.singletonList("item"), false, null, false, false);
+    }
+
+    /**
+     * Returns the type of an attribute: an entity, an embeddable (attributes, not an entity) or a basic type.
+     */
+    private static Type<?> type(Class<?> javaType, Map<String, Type<?>> attributes, boolean entity) {
+        Class<?> typeInterface = entity ? EntityType.class : (attributes != null) ? ManagedType.class : Type.class;
+        return (Type<?>) Proxy.newProxyInstance(JpaResultCacheTest.class.getClassLoader(),
+                new Class<?>[]{typeInterface}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getJavaType":
+                            return javaType;
+                        case "getAttribute":
+                            Type<?> target = attributes.get((String) args[0]);
+                            if (target == null) {
+                                throw new IllegalArgumentException("Unknown attribute " + args[0]);
+                            }
+                            return attribute(target);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static Attribute<?, ?> attribute(Type<?> target) {
+        // associations to entities are collections, to embeddables and basic types single valued
+        boolean plural = target instanceof EntityType;
+        return (Attribute<?, ?>) Proxy.newProxyInstance(JpaResultCacheTest.class.getClassLoader(),
+                new Class<?>[]{plural ? PluralAttribute.class : SingularAttribute.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getElementType") || method.getName().equals("getType")) {
+                        return target;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static EntityManager entityManager(Map<Class<?>, Map<String, Type<?>>> model) {
+        Metamodel metamodel = (Metamodel) Proxy.newProxyInstance(JpaResultCacheTest.class.getClassLoader(),
+                new Class<?>[]{Metamodel.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("managedType")) {
+                        Class<?> javaType = (Class<?>) args[0];
+                        return type(javaType, model.get(javaType), true);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        return (EntityManager) Proxy.newProxyInstance(JpaResultCacheTest.class.getClassLoader(),
+                new Class<?>[]{EntityManager.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getMetamodel")) {
+                        return metamodel;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static class Person {
+    }
+
+    private static class Student extends Person {
+    }
+
+    private static class Lecturer extends Person {
+    }
+
+    private static class Address {
+    }
+
+    private static class Room {
+    }
+}
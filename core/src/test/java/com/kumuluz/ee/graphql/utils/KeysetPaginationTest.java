@@ -0,0 +1,126 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import graphql.GraphQLException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests encoding and decoding of {@link KeysetPagination} cursors.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class KeysetPaginationTest {
+
+    private static final List<String> KEYS = Arrays.asList("created", "name", "id");
+    private static final String SIGNATURE = "created DESC,name ASC,id ASC";
+
+    @Test
+    public void testCursorRoundTrip() {
+        Timestamp created = Timestamp.from(Instant.parse("2020-05-01T10:15:30.123456789Z"));
+        Row row = new Row(created, "ana", 42L);
+
+        String cursor = KeysetPagination.encodeCursor(row, KEYS, SIGNATURE);
+        List<String> values = KeysetPagination.decodeCursor(cursor, KEYS, SIGNATURE);
+
+        Assert.assertEquals(values, Arrays.asList("2020-05-01T10:15:30.123456789Z", "ana", "42"));
+        Assert.assertEquals(KeysetPagination.decodeValue(values.get(0), Timestamp.class), created);
+        Assert.assertEquals(KeysetPagination.decodeValue(values.get(1), String.class), "ana");
+        Assert.assertEquals(KeysetPagination.decodeValue(values.get(2), Long.class), 42L);
+    }
+
+    @Test
+    public void testTimestampKeepsNanos() {
+        Timestamp timestamp = Timestamp.from(Instant.parse("2021-01-01T00:00:00.000000001Z"));
+
+        Object decoded = KeysetPagination.decodeValue(KeysetPagination.encodeValue(timestamp), Timestamp.class);
+
+        Assert.assertEquals(decoded, timestamp);
+        Assert.assertEquals(((Timestamp) decoded).getNanos(), 1);
+    }
+
+    @Test
+    public void testDecodeIntoAttributeType() {
+        String value = KeysetPagination.encodeValue(Timestamp.from(Instant.parse("2021-01-01T00:00:00.5Z")));
+
+        // temporal attributes declared as Date are decoded to (more precise) timestamps
+        Assert.assertTrue(KeysetPagination.decodeValue(value, Date.class) instanceof Timestamp);
+        Assert.assertEquals(KeysetPagination.decodeValue(value, java.sql.Date.class).getClass(), java.sql.Date.class);
+        Assert.assertEquals(KeysetPagination.decodeValue(value, Instant.class), Instant.parse("2021-01-01T00:00:00.5Z"));
+        Assert.assertEquals(KeysetPagination.encodeValue(new java.sql.Date(0)), "1970-01-01T00:00:00Z");
+
+        LocalDateTime localDateTime = LocalDateTime.parse("2021-01-01T10:00:00.123456");
+        Assert.assertEquals(KeysetPagination.decodeValue(KeysetPagination.encodeValue(localDateTime),
+                LocalDateTime.class), localDateTime);
+    }
+
+    @Test(expectedExceptions = GraphQLException.class)
+    public void testCursorOfDifferentSort() {
+        String cursor = KeysetPagination.encodeCursor(new Row(new Timestamp(0), "ana", 1L), KEYS, SIGNATURE);
+
+        KeysetPagination.decodeCursor(cursor, KEYS, "created ASC,name ASC,id ASC");
+    }
+
+    @Test(expectedExceptions = GraphQLException.class)
+    public void testMalformedCursor() {
+        KeysetPagination.decodeCursor("not a cursor", KEYS, SIGNATURE);
+    }
+
+    @Test(expectedExceptions = GraphQLException.class)
+    public void testNullSortValue() {
+        String cursor = KeysetPagination.encodeCursor(new Row(null, "ana", 1L), KEYS, SIGNATURE);
+
+        KeysetPagination.decodeCursor(cursor, KEYS, SIGNATURE);
+    }
+
+    public static class Row {
+        private final Timestamp created;
+        private final String name;
+        private final Long id;
+
+        public Row(Timestamp created, String name, Long id) {
+            this.created = created;
+            this.name = name;
+            this.id = id;
+        }
+
+        public Timestamp getCreated() {
+            return created;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Long getId() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import com.kumuluz.ee.graphql.classes.*;
+import com.kumuluz.ee.rest.beans.QueryParameters;
+import com.kumuluz.ee.rest.enums.FilterOperation;
+import com.kumuluz.ee.rest.enums.OrderDirection;
+import com.kumuluz.ee.rest.utils.StreamUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+/**
+ * Compares {@link ListProcessor} with {@link StreamUtils} from kumuluzee-rest on the same inputs.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class ListProcessorTest {
+
+    private static final String[] NAMES = {"ana", "bor", "cene", "dita", "eva", "filip"};
+
+    private final List<Item> items = createItems(400);
+
+    @Test
+    public void testUnsorted() {
+        assertSameAsStreamUtils(null, null, 0, 20);
+        assertSameAsStreamUtils(null, null, 390, 20);
+        assertSameAsStreamUtils(null, filter("score", FilterOperation.GT, "50"), 5, 10);
+    }
+
+    @Test
+    public void testFullSort() {
+        // offset + limit is large compared to the list size, all matching elements are sorted
+        assertSameAsStreamUtils(sort("score", OrderDirection.ASC), null, 0, 300);
+        assertSameAsStreamUtils(sort("name", OrderDirection.DESC), null, 50, 200);
+        assertSameAsStreamUtils(sort("score", OrderDirection.DESC), filter("name", FilterOperation.NEQ, "ana"), 0, 400);
+    }
+
+    @Test
+    public void testTopK() {
+        // offset + limit is small compared to the list size, only the first elements are kept in a bounded heap
+        assertSameAsStreamUtils(sort("score", OrderDirection.ASC), null, 0, 10);
+        assertSameAsStreamUtils(sort("score", OrderDirection.DESC), null, 20, 10);
+        assertSameAsStreamUtils(sort("name", OrderDirection.ASC), filter("score", FilterOperation.LTE, "70"), 3, 7);
+        assertSameAsStreamUtils(sort("id", OrderDirection.DESC), null, 0, 1);
+    }
+
+    @Test
+    public void testTopKKeepsEncounterOrderOfTies() {
+        ListProcessor.Page<Item> page = ListProcessor.process(items, sort("name", OrderDirection.ASC), null, 0, 10);
+
+        Assert.assertEquals(page.getTotal(), items.size());
+        int previous = -1;
+        for (Item item : page.getItems()) {
+            Assert.assertEquals(item.getName(), "ana");
+            Assert.assertTrue(item.getId() > previous, "ties must keep the encounter order");
+            previous = item.getId();
+        }
+    }
+
+    @Test
+    public void testSortedWithoutLimit() {
+        List<Item> expected = new ArrayList<>(items);
+        expected.sort(Comparator.comparing(Item::getScore));
+
+        ListProcessor.Page<Item> page = ListProcessor.process(items, sort("score", OrderDirection.ASC), null, 0, null);
+
+        Assert.assertEquals(page.getItems(), expected);
+        Assert.assertEquals(page.getTotal(), items.size());
+
+        page = ListProcessor.process(items, sort("score", OrderDirection.ASC), null, 390, null);
+
+        Assert.assertEquals(page.getItems(), expected.subList(390, 400));
+        Assert.assertEquals(page.getTotal(), items.size());
+    }
+
+    @Test
+    public void testFilters() {
+        Sort byId = sort("id", OrderDirection.ASC);
+        assertSameAsStreamUtils(byId, filter("name", FilterOperation.EQ, "eva"), 0, 400);
+        assertSameAsStreamUtils(byId, filter("score", FilterOperation.GTE, "40"), 0, 400);
+        assertSameAsStreamUtils(byId, filter("score", FilterOperation.LT, "15"), 0, 400);
+        assertSameAsStreamUtils(byId, filter("name", FilterOperation.IN, "[bor,dita]"), 0, 400);
+        assertSameAsStreamUtils(byId, filter("name", FilterOperation.NIN, "[bor,dita]"), 0, 400);
+        assertSameAsStreamUtils(byId, filter("comment", FilterOperation.ISNULL, null), 0, 400);
+        assertSameAsStreamUtils(byId, filter("comment", FilterOperation.ISNOTNULL, null), 0, 400);
+    }
+
+    @Test
+    public void testEmpty() {
+        ListProcessor.Page<Item> page = ListProcessor.process(Collections.<Item>emptyList(),
+                sort("score", OrderDirection.ASC), filter("score", FilterOperation.GT, "0"), 0, 10);
+
+        Assert.assertTrue(page.getItems().isEmpty());
+        Assert.assertEquals(page.getTotal(), 0);
+    }
+
+    private void assertSameAsStreamUtils(Sort sort, Filter filter, int offset, int limit) {
+        Pagination pagination = new Pagination();
+        pagination.setOffset(offset);
+        pagination.setLimit(limit);
+        QueryParameters queryParameters = GraphQLUtils.queryParameters(pagination, sort, filter);
+
+        List<Item> expected = StreamUtils.queryEntities(items, queryParameters);
+        long expectedTotal = StreamUtils.queryEntitiesCount(items, queryParameters);
+
+        ListProcessor.Page<Item> page = ListProcessor.process(items, sort, filter, offset, limit);
+
+        Assert.assertEquals(page.getItems(), expected);
+        Assert.assertEquals(page.getTotal(), expectedTotal);
+    }
+
+    private static List<Item> createItems(int size) {
+        Random random = new Random(42);
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            items.add(new Item(i, NAMES[random.nextInt(NAMES.length)], random.nextInt(100),
+                    random.nextBoolean() ? "comment " + i : null));
+        }
+        return items;
+    }
+
+    private static Sort sort(String field, OrderDirection order) {
+        SortField sortField = new SortField();
+        sortField.setField(field);
+        sortField.setOrder(order);
+        Sort sort = new Sort();
+        sort.setFields(Collections.singletonList(sortField));
+        return sort;
+    }
+
+    private static Filter filter(String field, FilterOperation op, String value) {
+        FilterField filterField = new FilterField();
+        filterField.setField(field);
+        filterField.setOp(op);
+        filterField.setValue(value);
+        filterField.setType(FilterType.STRING);
+        Filter filter = new Filter();
+        filter.setFields(Collections.singletonList(filterField));
+        return filter;
+    }
+
+    public static class Item {
+        private final Integer id;
+        private final String name;
+        private final Integer score;
+        private final String comment;
+
+        public Item(Integer id, String name, Integer score, String comment) {
+            this.id = id;
+            this.name = name;
+            this.score = score;
+            this.comment = comment;
+        }
+
+        public Integer getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Integer getScore() {
+            return score;
+        }
+
+        public String getComment() {
+            return comment;
+        }
+
+        @Override
+        public String toString() {
+            return "Item" + id;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import graphql.GraphQLException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests resolution of nested getters by {@link PropertyAccessor}.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class PropertyAccessorTest {
+
+    @Test
+    public void testNestedPathUsesRuntimeClass() {
+        Holder holder = new Holder(new Extended("base", "extra"));
+
+        PropertyAccessor accessor = PropertyAccessor.of(Holder.class, "value.extra");
+
+        Assert.assertEquals(accessor.get(holder), "extra");
+        Assert.assertSame(accessor.getParent(holder), holder.getValue());
+        Assert.assertEquals(accessor.getMethod(holder).getDeclaringClass(), Extended.class);
+    }
+
+    @Test
+    public void testNullAlongPath() {
+        PropertyAccessor accessor = PropertyAccessor.of(Holder.class, "value.name");
+
+        Assert.assertNull(accessor.get(new Holder(null)));
+        Assert.assertNull(accessor.getParent(new Holder(null)));
+        Assert.assertNull(accessor.getMethod(new Holder(null)));
+    }
+
+    @Test
+    public void testDeclaredType() {
+        Assert.assertEquals(PropertyAccessor.of(Holder.class, "value.name").getType(), String.class);
+        Assert.assertEquals(PropertyAccessor.of(Holder.class, "active").getType(), Boolean.class);
+    }
+
+    @Test(expectedExceptions = GraphQLException.class)
+    public void testMissingGetter() {
+        PropertyAccessor.of(Holder.class, "value.missing").get(new Holder(new Base("base")));
+    }
+
+    @Test(expectedExceptions = GraphQLException.class)
+    public void testListGetter() {
+        PropertyAccessor.of(Holder.class, "tags");
+    }
+
+    public static class Holder {
+        private final Base value;
+
+        public Holder(Base value) {
+            this.value = value;
+        }
+
+        public Base getValue() {
+            return value;
+        }
+
+        public Boolean getActive() {
+            return true;
+        }
+
+        public List<String> getTags() {
+            return Collections.emptyList();
+        }
+    }
+
+    public static class Base {
+        private final String name;
+
+        public Base(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public static class Extended extends Base {
+        private final String extra;
+
+        public Extended(String name, String extra) {
+            super(name);
+            this.extra = extra;
+        }
+
+        public String getExtra() {
+            return extra;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *  Copyright (c) 2014-2018 Kumuluz and/or its affiliates
+ *  and other contributors as indicated by the @author tags and
+ *  the contributor list.
+ *
+ *  Licensed under the MIT License (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  https://opensource.org/licenses/MIT
+ *
+ *  The software is provided "AS IS", WITHOUT WARRANTY OF ANY KIND, express or
+ *  implied, including but not limited to the warranties of merchantability,
+ *  fitness for a particular purpose and noninfringement. in no event shall the
+ *  authors or copyright holders be liable for any claim, damages or other
+ *  liability, whether in an action of contract, tort or otherwise, arising from,
+ *  out of or in connection with the software or the use or other dealings in the
+ *  software. See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.kumuluz.ee.graphql.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests Accept and Content-Type header negotiation of {@link SerializationFormat}.
+ *
+ * @author Domen Kajdic
+ * @since 1.2.0
+ */
+public class SerializationFormatTest {
+
+    @Test
+    public void testFirstListedFormatWins() {
+        Assert.assertEquals(SerializationFormat.fromAccept("application/json, application/x-ndjson"),
+                SerializationFormat.JSON);
+        Assert.assertEquals(SerializationFormat.fromAccept("application/x-ndjson, application/json"),
+                SerializationFormat.NDJSON);
+    }
+
+    @Test
+    public void testQualityValues() {
+        Assert.assertEquals(SerializationFormat.fromAccept("application/x-ndjson;q=0.5, application/json"),
+                SerializationFormat.JSON);
+        Assert.assertEquals(SerializationFormat.fromAccept("application/json;q=0.2, application/x-ndjson; q=0.8"),
+                SerializationFormat.NDJSON);
+        Assert.assertEquals(SerializationFormat.fromAccept("application/json; charset=utf-8; Q=1.0"),
+                SerializationFormat.JSON);
+    }
+
+    @Test
+    public void testZeroQualityIsNeverReturned() {
+        Assert.assertEquals(SerializationFormat.fromAccept("application/x-ndjson;q=0, application/json"),
+                SerializationFormat.JSON);
+        Assert.assertNull(SerializationFormat.fromAccept("application/json;q=0"));
+        Assert.assertNull(SerializationFormat.fromAccept("application/json;q=invalid"));
+    }
+
+    @Test
+    public void testUnsupported() {
+        Assert.assertNull(SerializationFormat.fromAccept(null));
+        Assert.assertNull(SerializationFormat.fromAccept("*/*"));
+        Assert.assertNull(SerializationFormat.fromAccept("text/html, application/xml;q=0.9"));
+    }
+}